@@ -0,0 +1,352 @@
+package de.intranda.goobi.plugins;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes files into a single archive stream, e.g. directly into a remote file, without creating the archive locally first. Finally a checksum
+ * manifest in the format of sha256sum is added as last entry, so that the ingest can verify the unpacked files.
+ */
+@Log4j2
+abstract class ArchiveWriter {
+
+    static final String MANIFEST_NAME = "manifest-sha256.txt";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Archive formats. Neither of them compresses, since images hardly get smaller.
+     */
+    enum Format {
+        /** files are uploaded one by one */
+        NONE(""),
+        /** POSIX ustar archive */
+        TAR(".tar"),
+        /** ZIP archive whose entries are stored without compression */
+        ZIP(".zip");
+
+        @Getter
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         *
+         * @param value configured value, case-insensitive
+         * @return the matching Format, or NONE if the value is unknown
+         */
+        static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value.trim())) {
+                    return format;
+                }
+            }
+            log.warn("Unknown archive format '" + value + "', files will be uploaded one by one.");
+            return NONE;
+        }
+    }
+
+    private final CountingOutputStream out;
+    private final StringBuilder manifest = new StringBuilder();
+
+    private ArchiveWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     *
+     * @param format TAR or ZIP
+     * @param out OutputStream the archive is written to, it is not closed by the ArchiveWriter
+     * @return ArchiveWriter of the given format
+     */
+    static ArchiveWriter create(Format format, OutputStream out) {
+        switch (format) {
+            case TAR:
+                return new TarWriter(out);
+            case ZIP:
+                return new ZipWriter(out);
+            default:
+                throw new IllegalArgumentException("No archive format: " + format);
+        }
+    }
+
+    /**
+     * Adds a file to the archive and to the checksum manifest.
+     *
+     * @param name path of the entry inside the archive, using / as separator
+     * @param file absolute path to the file
+     * @throws IOException
+     */
+    void addFile(String name, Path file) throws IOException {
+        String checksum = writeEntry(name, file);
+        manifest.append(checksum).append("  ").append(name).append('\n');
+    }
+
+    /**
+     * Adds the checksum manifest and the end of the archive. The underlying OutputStream is flushed but not closed.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        writeEntry(MANIFEST_NAME, manifest.toString().getBytes(StandardCharsets.UTF_8));
+        writeEnd();
+        out.flush();
+    }
+
+    /**
+     *
+     * @return number of bytes written so far
+     */
+    long getBytesWritten() {
+        return out.count;
+    }
+
+    protected OutputStream getOut() {
+        return out;
+    }
+
+    /**
+     * Writes a file entry.
+     *
+     * @return SHA-256 checksum of the file as hex string
+     */
+    protected abstract String writeEntry(String name, Path file) throws IOException;
+
+    /**
+     * Writes an entry with the given content.
+     */
+    protected abstract void writeEntry(String name, byte[] content) throws IOException;
+
+    /**
+     * Writes whatever ends the archive.
+     */
+    protected abstract void writeEnd() throws IOException;
+
+    /**
+     * Copies the file to the given stream while computing its checksum.
+     *
+     * @param expectedSize size the file had when the entry header was written
+     * @return SHA-256 checksum of the file as hex string
+     */
+    protected static String copy(Path file, OutputStream target, long expectedSize) throws IOException {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                target.write(buffer, 0, read);
+                copied += read;
+            }
+        }
+        if (copied != expectedSize) {
+            throw new IOException("The file '" + file + "' changed while it was archived.");
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the underlying stream is closed by the owner of the ArchiveWriter
+            flush();
+        }
+    }
+
+    /**
+     * Writes a POSIX ustar archive. Entries of more than 8 GB use the base-256 size encoding of GNU tar.
+     */
+    static final class TarWriter extends ArchiveWriter {
+
+        private static final int BLOCK_SIZE = 512;
+
+        private TarWriter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        protected String writeEntry(String name, Path file) throws IOException {
+            long size = Files.size(file);
+            writeHeader(name, size, Files.getLastModifiedTime(file).toMillis() / 1000);
+            String checksum = copy(file, getOut(), size);
+            pad(size);
+            return checksum;
+        }
+
+        @Override
+        protected void writeEntry(String name, byte[] content) throws IOException {
+            writeHeader(name, content.length, System.currentTimeMillis() / 1000);
+            getOut().write(content);
+            pad(content.length);
+        }
+
+        @Override
+        protected void writeEnd() throws IOException {
+            getOut().write(new byte[2 * BLOCK_SIZE]);
+        }
+
+        private void pad(long size) throws IOException {
+            int remainder = (int) (size % BLOCK_SIZE);
+            if (remainder > 0) {
+                getOut().write(new byte[BLOCK_SIZE - remainder]);
+            }
+        }
+
+        private void writeHeader(String name, long size, long mtime) throws IOException {
+            getOut().write(createHeader(name, size, mtime));
+        }
+
+        /**
+         *
+         * @param name path of the entry inside the archive, using / as separator
+         * @param size size of the entry in bytes
+         * @param mtime modification time of the entry in seconds since the epoch
+         * @return ustar header block of the entry
+         * @throws IOException if the name cannot be stored in a ustar header
+         */
+        static byte[] createHeader(String name, long size, long mtime) throws IOException {
+            byte[] header = new byte[BLOCK_SIZE];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length <= 100) {
+                System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+            } else {
+                // ustar stores longer names split at a slash into a prefix and a name
+                int split = name.lastIndexOf('/');
+                byte[] prefix = split > 0 ? name.substring(0, split).getBytes(StandardCharsets.UTF_8) : nameBytes;
+                byte[] rest = split > 0 ? name.substring(split + 1).getBytes(StandardCharsets.UTF_8) : nameBytes;
+                if (split <= 0 || prefix.length > 155 || rest.length > 100) {
+                    throw new IOException("The path '" + name + "' is too long for a tar archive.");
+                }
+                System.arraycopy(rest, 0, header, 0, rest.length);
+                System.arraycopy(prefix, 0, header, 345, prefix.length);
+            }
+            putOctal(header, 100, 8, 0644);
+            putOctal(header, 108, 8, 0);
+            putOctal(header, 116, 8, 0);
+            if (size < 077777777777L) {
+                putOctal(header, 124, 12, size);
+            } else {
+                header[124] = (byte) 0x80;
+                for (int i = 135; i > 124; i--) {
+                    header[i] = (byte) (size >>> (8 * (135 - i)));
+                }
+            }
+            putOctal(header, 136, 12, mtime);
+            header[156] = '0';
+            System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+            header[263] = '0';
+            header[264] = '0';
+            // the checksum is computed with its own field filled with spaces
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xff;
+            }
+            putOctal(header, 148, 7, checksum);
+            return header;
+        }
+
+        /**
+         * Writes the value as zero-padded octal number, terminated by a NUL byte.
+         */
+        private static void putOctal(byte[] header, int offset, int length, long value) {
+            String octal = Long.toOctalString(value);
+            String padded = "0".repeat(length - 1 - octal.length()) + octal;
+            System.arraycopy(padded.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+            header[offset + length - 1] = 0;
+        }
+    }
+
+    /**
+     * Writes a ZIP archive whose entries are stored without compression. Since stored entries need their CRC in the local header, every file is
+     * read twice, the second time usually from the page cache.
+     */
+    private static final class ZipWriter extends ArchiveWriter {
+
+        private final ZipOutputStream zip;
+
+        private ZipWriter(OutputStream out) {
+            super(out);
+            zip = new ZipOutputStream(getOut(), StandardCharsets.UTF_8);
+            zip.setMethod(ZipOutputStream.STORED);
+        }
+
+        @Override
+        protected String writeEntry(String name, Path file) throws IOException {
+            long size = Files.size(file);
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+            zip.putNextEntry(createEntry(name, size, crc.getValue(), Files.getLastModifiedTime(file).toMillis()));
+            String checksum = copy(file, zip, size);
+            zip.closeEntry();
+            return checksum;
+        }
+
+        @Override
+        protected void writeEntry(String name, byte[] content) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            zip.putNextEntry(createEntry(name, content.length, crc.getValue(), System.currentTimeMillis()));
+            zip.write(content);
+            zip.closeEntry();
+        }
+
+        @Override
+        protected void writeEnd() throws IOException {
+            zip.finish();
+        }
+
+        private static ZipEntry createEntry(String name, long size, long crc, long time) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc);
+            entry.setTime(time);
+            return entry;
+        }
+    }
+
+}
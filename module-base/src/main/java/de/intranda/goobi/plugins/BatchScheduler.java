@@ -0,0 +1,105 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs the jobs of a batch export on one pool of workers that is shared by all groups, so that the number of concurrent jobs is limited for the
+ * whole batch. A group never uses more workers than its own limit, and jobs with the same key, e.g. the same target folder, run one after
+ * another.
+ *
+ * @param <T> type of the jobs
+ */
+@Log4j2
+final class BatchScheduler<T> {
+
+    private final int threads;
+    private final Map<String, Group<T>> groups = new LinkedHashMap<>();
+
+    private static final class Group<T> {
+        private int threads;
+        /** jobs of the group by their key, in the order they were added */
+        private final Map<String, List<T>> chains = new LinkedHashMap<>();
+    }
+
+    /**
+     *
+     * @param threads maximum number of jobs that run at the same time across all groups
+     */
+    BatchScheduler(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     *
+     * @param group name of the group the job belongs to
+     * @param groupThreads maximum number of jobs of the group that run at the same time, the first job of a group determines it
+     * @param key jobs with the same key never run at the same time
+     * @param job job to be run
+     */
+    void add(String group, int groupThreads, String key, T job) {
+        Group<T> g = groups.computeIfAbsent(group, k -> {
+            Group<T> created = new Group<>();
+            created.threads = Math.max(1, groupThreads);
+            return created;
+        });
+        g.chains.computeIfAbsent(key, k -> new LinkedList<>()).add(job);
+    }
+
+    /**
+     * Runs all jobs and waits until they are finished. A RuntimeException of a job is logged and does not stop the other jobs.
+     *
+     * @param action action that runs a single job
+     * @throws InterruptedException if the waiting thread was interrupted, the running jobs are interrupted as well
+     */
+    void run(Consumer<T> action) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Group<T>> group : groups.entrySet()) {
+                Queue<List<T>> chains = new ConcurrentLinkedQueue<>(group.getValue().chains.values());
+                int lanes = Math.min(group.getValue().threads, chains.size());
+                log.debug("Running " + chains.size() + " chain(s) of jobs of group '" + group.getKey() + "' in " + lanes + " lane(s).");
+                // every lane takes whole chains, so that the jobs of a chain run one after another
+                for (int i = 0; i < lanes; i++) {
+                    futures.add(executor.submit(() -> {
+                        List<T> chain;
+                        while ((chain = chains.poll()) != null) {
+                            for (T job : chain) {
+                                runJob(action, job);
+                            }
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            log.error("Unexpected error during batch export.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runJob(Consumer<T> action, T job) {
+        try {
+            action.accept(job);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error during batch export.", e);
+        }
+    }
+
+}
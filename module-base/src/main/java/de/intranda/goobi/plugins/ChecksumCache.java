@@ -0,0 +1,161 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Caches SHA-256 checksums of source files. An entry is only reused as long as size and modification time of the file are unchanged. The cache
+ * can be stored as a sidecar file in the process folder, so that later exports of the same process do not need to compute the checksums again.
+ */
+@Log4j2
+class ChecksumCache {
+
+    static final String FILE_NAME = "vlm_export_checksums.txt";
+    private static final String SEPARATOR = "\t";
+    /** number of hex digits of a SHA-256 checksum */
+    private static final int CHECKSUM_LENGTH = 64;
+
+    private final Path cacheFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+
+    @AllArgsConstructor
+    private static class Entry {
+        private long size;
+        private long lastModified;
+        private String checksum;
+    }
+
+    /**
+     *
+     * @param cacheFile path of the sidecar file, or null if the checksums should only be cached in memory
+     */
+    private ChecksumCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     *
+     * @return ChecksumCache that is not persisted
+     */
+    static ChecksumCache inMemory() {
+        return new ChecksumCache(null);
+    }
+
+    /**
+     * Loads the sidecar file from the given folder. A missing or unreadable file results in an empty cache.
+     *
+     * @param folder absolute path to the folder of the sidecar file, e.g. the process folder
+     * @return ChecksumCache that will be saved into the same sidecar file
+     */
+    static ChecksumCache load(Path folder) {
+        ChecksumCache cache = new ChecksumCache(folder.resolve(FILE_NAME));
+        if (!Files.isRegularFile(cache.cacheFile)) {
+            return cache;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cache.cacheFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                // a line that was not completely written is ignored
+                if (parts.length == 4 && parts[3].length() == CHECKSUM_LENGTH) {
+                    cache.entries.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read the checksum cache '" + cache.cacheFile + "', it will be rebuilt.", e);
+            cache.entries.clear();
+        }
+        log.debug("Loaded " + cache.entries.size() + " checksum(s) from '" + cache.cacheFile + "'.");
+        return cache;
+    }
+
+    /**
+     *
+     * @param file absolute path to the file
+     * @return the cached checksum of the file, or null if there is none or the file was changed since
+     * @throws IOException
+     */
+    String get(Path file) throws IOException {
+        Entry entry = entries.get(key(file));
+        if (entry == null || entry.size != Files.size(file) || entry.lastModified != Files.getLastModifiedTime(file).toMillis()) {
+            return null;
+        }
+        return entry.checksum;
+    }
+
+    /**
+     *
+     * @param file absolute path to the file
+     * @param checksum checksum of the current content of the file
+     * @throws IOException
+     */
+    void put(Path file, String checksum) throws IOException {
+        Entry entry = new Entry(Files.size(file), Files.getLastModifiedTime(file).toMillis(), checksum);
+        Entry previous = entries.put(key(file), entry);
+        if (previous == null || !checksum.equals(previous.checksum) || previous.size != entry.size || previous.lastModified != entry.lastModified) {
+            changed = true;
+        }
+    }
+
+    /**
+     *
+     * @param file absolute path to the file
+     * @return the cached checksum of the file, computing and caching it first if necessary
+     * @throws IOException
+     */
+    String getOrCompute(Path file) throws IOException {
+        String checksum = get(file);
+        if (checksum == null) {
+            checksum = LocalFileCopier.checksum(file);
+            put(file, checksum);
+        }
+        return checksum;
+    }
+
+    /**
+     *
+     * @param file absolute path to the file
+     * @return path of the file relative to the folder of the sidecar file if possible, so that the cache survives moving the process folder
+     */
+    private String key(Path file) {
+        if (cacheFile != null && file.startsWith(cacheFile.getParent())) {
+            return cacheFile.getParent().relativize(file).toString();
+        }
+        return file.toString();
+    }
+
+    /**
+     * Writes the cache into its sidecar file, if it is persistent and was changed since it was loaded.
+     *
+     * @throws IOException
+     */
+    void save() throws IOException {
+        if (cacheFile == null || !changed) {
+            return;
+        }
+        // write into a temporary file first, so that an interrupted export never leaves a truncated cache behind
+        Path tempFile = cacheFile.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + SEPARATOR + entry.size + SEPARATOR + entry.lastModified + SEPARATOR + entry.checksum);
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+        log.debug("Saved " + entries.size() + " checksum(s) into '" + cacheFile + "'.");
+    }
+
+}
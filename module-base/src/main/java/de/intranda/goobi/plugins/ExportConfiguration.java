@@ -0,0 +1,142 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Parsed plugin configuration, indexed by project name. Instances are cached per plugin and only parsed again once the modification time of the
+ * configuration file changes. Neither the instances nor their config blocks must be modified.
+ */
+@Log4j2
+final class ExportConfiguration {
+
+    private static final String ALL_PROJECTS = "*";
+    private static final Map<String, ExportConfiguration> CACHE = new HashMap<>();
+
+    private final long lastModified;
+    private final Map<String, List<ConfigBlock>> blocksByProject;
+
+    /**
+     * One `config` block of the configuration file.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class ConfigBlock {
+        /** position of the block in the configuration file */
+        private final int index;
+        private final List<Condition> conditions;
+        /** settings of the block, to be used read-only */
+        private final HierarchicalConfiguration settings;
+    }
+
+    /**
+     * One `condition` of a config block, with its regular expression already compiled.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class Condition {
+        private final String type;
+        private final String field;
+        /** compiled regular expression of `matches`, or null if it is invalid */
+        private final Pattern pattern;
+    }
+
+    /**
+     *
+     * @param xmlConfig plugin configuration using the XPathExpressionEngine
+     * @param lastModified modification time of the configuration file, -1 if it is unknown
+     */
+    ExportConfiguration(XMLConfiguration xmlConfig, long lastModified) {
+        this.lastModified = lastModified;
+        Map<String, List<ConfigBlock>> blocks = new LinkedHashMap<>();
+        List<HierarchicalConfiguration> confs = xmlConfig.configurationsAt("//config");
+        for (int i = 0; i < confs.size(); i++) {
+            HierarchicalConfiguration conf = confs.get(i);
+            ConfigBlock block = new ConfigBlock(i, parseConditions(conf), conf);
+            for (String project : conf.getStringArray("project")) {
+                blocks.computeIfAbsent(project.trim(), k -> new LinkedList<>()).add(block);
+            }
+        }
+        blocks.replaceAll((project, list) -> Collections.unmodifiableList(list));
+        this.blocksByProject = Collections.unmodifiableMap(blocks);
+    }
+
+    private static List<Condition> parseConditions(HierarchicalConfiguration conf) {
+        List<Condition> conditions = new LinkedList<>();
+        for (HierarchicalConfiguration condition : conf.configurationsAt("condition")) {
+            String regex = condition.getString("matches");
+            Pattern pattern = null;
+            try {
+                pattern = regex == null ? null : Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                log.error("Invalid regular expression in condition of the VLM export configuration: " + regex);
+            }
+            conditions.add(new Condition(condition.getString("type"), condition.getString("field"), pattern));
+        }
+        return Collections.unmodifiableList(conditions);
+    }
+
+    /**
+     * Returns the cached configuration of the plugin, parsing the configuration file again if it was modified since.
+     *
+     * @param pluginTitle title of the plugin
+     * @return ExportConfiguration of the plugin
+     */
+    static synchronized ExportConfiguration getInstance(String pluginTitle) {
+        long lastModified = getLastModified(pluginTitle);
+        ExportConfiguration configuration = CACHE.get(pluginTitle);
+        if (configuration == null || configuration.lastModified != lastModified) {
+            log.debug("Parsing the configuration of " + pluginTitle);
+            XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(pluginTitle);
+            xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+            configuration = new ExportConfiguration(xmlConfig, lastModified);
+            CACHE.put(pluginTitle, configuration);
+        }
+        return configuration;
+    }
+
+    private static long getLastModified(String pluginTitle) {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + pluginTitle + ".xml");
+        try {
+            return Files.getLastModifiedTime(configFile).toMillis();
+        } catch (IOException e) {
+            log.debug("Cannot determine the modification time of " + configFile, e);
+            return -1;
+        }
+    }
+
+    /**
+     * order of configuration is: 1.) project name matches 2.) project is *
+     *
+     * @param projectName name of the project
+     * @return config blocks of the project, or those of all projects if there are none
+     */
+    List<ConfigBlock> getBlocks(String projectName) {
+        List<ConfigBlock> blocks = blocksByProject.get(projectName);
+        if (blocks == null) {
+            blocks = blocksByProject.getOrDefault(ALL_PROJECTS, Collections.emptyList());
+        }
+        return blocks;
+    }
+
+}
@@ -0,0 +1,215 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Append-only journal of an export, kept as a sidecar file in the process folder. It records every file that was completely transferred and
+ * verified, and finally the creation of the .ctl file, each forced to disk before the export goes on. If an export is interrupted, e.g. because
+ * the JVM died, the next export to the same target replays the journal and only transfers the files that are missing. The journal is deleted once
+ * an export is complete.
+ */
+@Log4j2
+class ExportJournal implements Closeable {
+
+    static final String FILE_NAME = "vlm_export_journal.txt";
+    private static final String SEPARATOR = "\t";
+    /** first line: target and root folder of the export */
+    private static final String TARGET = "T";
+    /** the target folders were prepared, the files recorded afterwards are in place */
+    private static final String PREPARED = "P";
+    /** a transferred and verified file */
+    private static final String FILE = "F";
+    /** the .ctl file was created, the export is complete */
+    private static final String COMPLETED = "C";
+
+    private final Path journalFile;
+    private final Path root;
+    /** files recorded by an interrupted export, by their path relative to the root folder */
+    private final Map<String, Entry> transferred = new ConcurrentHashMap<>();
+    private boolean resumed;
+    private FileChannel channel;
+
+    @AllArgsConstructor
+    private static class Entry {
+        private long size;
+        private long lastModified;
+    }
+
+    /**
+     *
+     * @param journalFile path of the sidecar file, or null if no journal should be kept
+     * @param root absolute path to the root folder of the export
+     */
+    private ExportJournal(Path journalFile, Path root) {
+        this.journalFile = journalFile;
+        this.root = root;
+    }
+
+    /**
+     *
+     * @return ExportJournal that records nothing and never resumes
+     */
+    static ExportJournal disabled() {
+        return new ExportJournal(null, null);
+    }
+
+    /**
+     * Opens the journal in the given folder. If it was left behind by an interrupted export to the same target and root folder, its entries are
+     * replayed, otherwise a new journal is started.
+     *
+     * @param folder absolute path to the folder of the sidecar file, e.g. the process folder
+     * @param target key of the target, e.g. user@host:port
+     * @param root absolute path to the folder the files are copied into
+     * @param resumable false if the files of an interrupted export cannot be in place anymore, e.g. because a new staging folder is used
+     * @return ExportJournal ready to record
+     * @throws IOException
+     */
+    static ExportJournal open(Path folder, String target, Path root, boolean resumable) throws IOException {
+        ExportJournal journal = new ExportJournal(folder.resolve(FILE_NAME), root);
+        String header = TARGET + SEPARATOR + target + SEPARATOR + root;
+        if (resumable && Files.isRegularFile(journal.journalFile)) {
+            journal.replay(header);
+        }
+        if (journal.resumed) {
+            journal.channel = FileChannel.open(journal.journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            log.debug("Resuming an interrupted export, " + journal.transferred.size() + " file(s) were transferred already.");
+        } else {
+            journal.transferred.clear();
+            journal.channel = FileChannel.open(journal.journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            journal.append(header);
+        }
+        return journal;
+    }
+
+    private void replay(String header) {
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            if (!header.equals(reader.readLine())) {
+                log.debug("The export journal belongs to another target, a new one is started.");
+                return;
+            }
+            boolean prepared = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                if (PREPARED.equals(parts[0])) {
+                    prepared = true;
+                } else if (FILE.equals(parts[0]) && parts.length >= 4) {
+                    transferred.put(parts[1], new Entry(Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                } else if (COMPLETED.equals(parts[0])) {
+                    // the export finished, only deleting the journal failed
+                    return;
+                }
+                // a line that was not completely written is ignored
+            }
+            resumed = prepared;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read the export journal '" + journalFile + "', a new one is started.", e);
+        }
+    }
+
+    /**
+     *
+     * @return true if the transferred files are recorded, false otherwise
+     */
+    boolean isEnabled() {
+        return journalFile != null;
+    }
+
+    /**
+     *
+     * @return true if an interrupted export is continued, in which case the target folders must not be cleared
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Records that the target folders were prepared.
+     *
+     * @throws IOException
+     */
+    void prepared() throws IOException {
+        if (journalFile != null && !resumed) {
+            append(PREPARED);
+        }
+    }
+
+    /**
+     *
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the target file
+     * @return true if an interrupted export transferred the file and the source file did not change since
+     * @throws IOException
+     */
+    boolean isTransferred(Path srcPath, Path destPath) throws IOException {
+        if (!resumed) {
+            return false;
+        }
+        Entry entry = transferred.get(root.relativize(destPath).toString());
+        return entry != null && entry.size == Files.size(srcPath) && entry.lastModified == Files.getLastModifiedTime(srcPath).toMillis();
+    }
+
+    /**
+     * Records a completely transferred and verified file.
+     *
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the target file
+     * @param checksum SHA-256 checksum of the source file
+     * @throws IOException
+     */
+    void record(Path srcPath, Path destPath, String checksum) throws IOException {
+        if (journalFile == null) {
+            return;
+        }
+        append(FILE + SEPARATOR + root.relativize(destPath) + SEPARATOR + Files.size(srcPath) + SEPARATOR
+                + Files.getLastModifiedTime(srcPath).toMillis() + SEPARATOR + checksum);
+    }
+
+    /**
+     * Records the creation of the .ctl file and deletes the journal, since there is nothing left to resume.
+     *
+     * @throws IOException
+     */
+    void completed() throws IOException {
+        if (journalFile == null) {
+            return;
+        }
+        append(COMPLETED);
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Appends a line and forces it to disk.
+     */
+    private synchronized void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
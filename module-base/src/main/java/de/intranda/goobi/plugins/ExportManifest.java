@@ -0,0 +1,48 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Records which files of an export were skipped, copied or removed. All lists are safe to be filled by concurrent copy workers.
+ */
+@Getter
+class ExportManifest {
+
+    private final List<String> skipped = Collections.synchronizedList(new LinkedList<>());
+    private final List<String> copied = Collections.synchronizedList(new LinkedList<>());
+    private final List<String> removed = Collections.synchronizedList(new LinkedList<>());
+
+    void addSkipped(String file) {
+        skipped.add(file);
+    }
+
+    void addCopied(String file) {
+        copied.add(file);
+    }
+
+    void addRemoved(String file) {
+        removed.add(file);
+    }
+
+    /**
+     * Adds the entries of another manifest, e.g. the one of a subfolder.
+     * 
+     * @param other ExportManifest whose entries are added
+     * @param prefix prefix added to the file names of the other manifest
+     */
+    void add(ExportManifest other, String prefix) {
+        other.getSkipped().forEach(file -> skipped.add(prefix + file));
+        other.getCopied().forEach(file -> copied.add(prefix + file));
+        other.getRemoved().forEach(file -> removed.add(prefix + file));
+    }
+
+    @Override
+    public String toString() {
+        return copied.size() + " file(s) copied, " + skipped.size() + " file(s) skipped, " + removed.size() + " file(s) removed";
+    }
+
+}
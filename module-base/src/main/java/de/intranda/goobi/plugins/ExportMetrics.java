@@ -0,0 +1,140 @@
+package de.intranda.goobi.plugins;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects timings and transfer statistics of one export. All counters are safe to be updated by concurrent copy workers.
+ */
+class ExportMetrics {
+
+    private static final double BYTES_PER_MEGABYTE = 1024d * 1024d;
+
+    /**
+     * Consecutive phases of an export.
+     */
+    enum Phase {
+        /** reading the METS file */
+        METADATA,
+        /** resolving the matching config block */
+        CONFIGURATION,
+        /** opening the SFTP session */
+        CONNECTION,
+        /** creating the target folders */
+        FOLDERS,
+        /** copying the files including their verification and the creation of the .ctl file */
+        COPY
+    }
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    /** time spent on checksums summed up over all workers, it overlaps the COPY phase */
+    private final LongAdder checksumNanos = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    ExportMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     *
+     * @return start time to be passed to {@link #stop(Phase, long)} or {@link #stopChecksum(long)}
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     *
+     * @param phase Phase that ended
+     * @param start value of {@link #start()} when the phase began
+     */
+    void stop(Phase phase, long start) {
+        phaseNanos.get(phase).add(System.nanoTime() - start);
+    }
+
+    /**
+     *
+     * @param start value of {@link #start()} when the checksum computation began
+     */
+    void stopChecksum(long start) {
+        checksumNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     *
+     * @param size size of the transferred file in bytes
+     */
+    void addFile(long size) {
+        files.increment();
+        bytes.add(size);
+    }
+
+    void addRetry() {
+        retries.increment();
+    }
+
+    long getMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase).sum());
+    }
+
+    long getChecksumMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(checksumNanos.sum());
+    }
+
+    long getFiles() {
+        return files.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     *
+     * @return transferred megabytes per second of the COPY phase
+     */
+    double getMegabytesPerSecond() {
+        double seconds = getSeconds(Phase.COPY);
+        return seconds > 0 ? getBytes() / BYTES_PER_MEGABYTE / seconds : 0;
+    }
+
+    /**
+     *
+     * @return transferred files per second of the COPY phase
+     */
+    double getFilesPerSecond() {
+        double seconds = getSeconds(Phase.COPY);
+        return seconds > 0 ? getFiles() / seconds : 0;
+    }
+
+    private double getSeconds(Phase phase) {
+        return phaseNanos.get(phase).sum() / 1e9;
+    }
+
+    /**
+     * @return one-line summary to be shown in the journal
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            summary.append(phase.name().toLowerCase()).append(String.format(Locale.ROOT, " %.2f s, ", getSeconds(phase)));
+        }
+        summary.append(String.format(Locale.ROOT, "checksums %.2f s, ", checksumNanos.sum() / 1e9));
+        summary.append(String.format(Locale.ROOT, "%d file(s), %.1f MB, %.1f MB/s, %.1f files/s, %d retries", getFiles(),
+                getBytes() / BYTES_PER_MEGABYTE, getMegabytesPerSecond(), getFilesPerSecond(), getRetries()));
+        return summary.toString();
+    }
+
+}
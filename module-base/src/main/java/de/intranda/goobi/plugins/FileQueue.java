@@ -0,0 +1,60 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Names of the files that still need to be copied. The queue can be filled while the source folder is being read and emptied by the copy workers
+ * at the same time. Workers wait for further names until the queue is marked complete.
+ */
+final class FileQueue {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final BlockingQueue<String> names = new LinkedBlockingQueue<>();
+    private volatile boolean complete;
+
+    void add(String name) {
+        names.add(name);
+    }
+
+    /**
+     * Marks that no further names will be added.
+     */
+    void complete() {
+        complete = true;
+    }
+
+    /**
+     * Waits until a name is available or the queue is complete.
+     *
+     * @return next name, or null if the queue is complete and empty
+     * @throws InterruptedException
+     */
+    String take() throws InterruptedException {
+        while (true) {
+            String name = names.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (name != null) {
+                return name;
+            }
+            if (complete) {
+                // a name may have been added right before the queue was completed
+                return names.poll();
+            }
+        }
+    }
+
+    /**
+     * Drops all remaining names and completes the queue, so that the workers run dry.
+     */
+    void clear() {
+        complete = true;
+        names.clear();
+    }
+
+    int size() {
+        return names.size();
+    }
+
+}
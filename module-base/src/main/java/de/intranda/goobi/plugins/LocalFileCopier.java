@@ -0,0 +1,349 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Copies files locally. Depending on the {@link Mode}, the data is either streamed through the JVM while the SHA-256 checksum of the source is
+ * computed in the same pass, or handed over to the operating system, which can avoid copying the data at all if source and target share a file
+ * system.
+ */
+@Log4j2
+class LocalFileCopier {
+
+    /**
+     * How files are copied.
+     */
+    enum Mode {
+        /** read and write through the JVM, computing the checksum on the fly */
+        STREAM,
+        /** let the kernel copy the data using FileChannel.transferTo */
+        TRANSFER,
+        /** create a hard link, falling back to TRANSFER if source and target are on different file systems */
+        HARDLINK,
+        /** create a copy-on-write clone, falling back to TRANSFER if the file system does not support it */
+        REFLINK,
+        /** REFLINK if source and target share a file system, TRANSFER otherwise */
+        AUTO;
+
+        /**
+         *
+         * @param value configured value, case-insensitive
+         * @return the matching Mode, or STREAM if the value is unknown
+         */
+        static Mode parse(String value) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+            log.warn("Unknown local copy mode '" + value + "', using '" + STREAM.name().toLowerCase() + "' instead.");
+            return STREAM;
+        }
+    }
+
+    /**
+     * Outcome of a copy.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class Result {
+        /** SHA-256 checksum of the source file as hex string, or null if the source was not read during the copy */
+        private final String checksum;
+        /** how the copy was actually made, which differs from the configured Mode if it fell back to TRANSFER, never AUTO */
+        private final Mode mode;
+    }
+
+    /** file systems on which a reflink failed, so that it is not tried again for every file */
+    private static final Map<FileStore, Boolean> REFLINK_UNSUPPORTED = new ConcurrentHashMap<>();
+    /** a clone only copies metadata, a cp running longer than this is assumed to hang */
+    private static final long REFLINK_TIMEOUT_SECONDS = 60;
+    /** direct buffers of finished copies, shared by all threads so that the workers of finished exports do not keep any */
+    private static final Deque<ByteBuffer> BUFFER_POOL = new ArrayDeque<>();
+    /** at most this many buffers of up to {@link TransferTuning#MAX_BUFFER_SIZE} are kept */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private final boolean fsync;
+    private final Mode mode;
+    private final RateLimiter rateLimiter;
+    private final RateLimiter.Priority priority;
+    private final TransferTuning tuning;
+
+    /**
+     *
+     * @param fsync true if the copy should be forced to the storage device before it is read again for verification, false otherwise
+     * @param mode Mode of the copy
+     */
+    LocalFileCopier(boolean fsync, Mode mode) {
+        this(fsync, mode, null, RateLimiter.Priority.NORMAL, new TransferTuning(0));
+    }
+
+    /**
+     * Links and clones do not transfer any data and are therefore not throttled.
+     *
+     * @param fsync true if the copy should be forced to the storage device before it is read again for verification, false otherwise
+     * @param mode Mode of the copy
+     * @param rateLimiter RateLimiter that throttles the copied data, or null if the copy should not be throttled
+     * @param priority Priority of the copied data
+     * @param tuning TransferTuning choosing the buffer sizes, which learns from the copies of all threads
+     */
+    LocalFileCopier(boolean fsync, Mode mode, RateLimiter rateLimiter, RateLimiter.Priority priority, TransferTuning tuning) {
+        this.fsync = fsync;
+        this.mode = mode;
+        this.rateLimiter = rateLimiter;
+        this.priority = priority;
+        this.tuning = tuning;
+    }
+
+    /**
+     * Copies the source file to the target file. An existing target file will be replaced. It is deleted rather than overwritten, since it may
+     * be a hard link to the source file, e.g. from an earlier export in the mode HARDLINK.
+     *
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the target file
+     * @return Result with the checksum of the source file if it was read during the copy, and the Mode the copy was made with
+     * @throws IOException
+     */
+    Result copy(Path srcPath, Path destPath) throws IOException {
+        Files.deleteIfExists(destPath);
+        switch (mode) {
+            case TRANSFER:
+                break;
+            case HARDLINK:
+                if (link(srcPath, destPath)) {
+                    return new Result(null, Mode.HARDLINK);
+                }
+                break;
+            case REFLINK:
+                if (reflink(srcPath, destPath)) {
+                    return new Result(null, Mode.REFLINK);
+                }
+                break;
+            case AUTO:
+                if (isSameFileStore(srcPath, destPath) && reflink(srcPath, destPath)) {
+                    return new Result(null, Mode.REFLINK);
+                }
+                break;
+            case STREAM:
+            default:
+                return new Result(stream(srcPath, destPath), Mode.STREAM);
+        }
+        transfer(srcPath, destPath);
+        return new Result(null, Mode.TRANSFER);
+    }
+
+    private String stream(Path srcPath, Path destPath) throws IOException {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        long start = System.nanoTime();
+        long size;
+        try (FileChannel in = FileChannel.open(srcPath, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(destPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            size = in.size();
+            // a direct buffer is read into and written from by the kernel without copying it on the Java heap
+            int bufferSize = tuning.getBufferSize(size);
+            ByteBuffer pooled = takeBuffer(bufferSize);
+            try {
+                ByteBuffer buffer = pooled.clear().limit(bufferSize).slice();
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    throttle(buffer.remaining());
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } finally {
+                returnBuffer(pooled);
+            }
+            if (fsync) {
+                out.force(true);
+            }
+        }
+        tuning.record(size, System.nanoTime() - start);
+        Files.setLastModifiedTime(destPath, Files.getLastModifiedTime(srcPath));
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     *
+     * @param size minimum capacity of the buffer
+     * @return direct buffer of the pool with at least the given capacity, or a new one if there is none
+     */
+    static ByteBuffer takeBuffer(int size) {
+        synchronized (BUFFER_POOL) {
+            for (Iterator<ByteBuffer> buffers = BUFFER_POOL.iterator(); buffers.hasNext();) {
+                ByteBuffer buffer = buffers.next();
+                if (buffer.capacity() >= size) {
+                    buffers.remove();
+                    return buffer;
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Puts a buffer back into the pool. If the pool is full, its smallest buffer is dropped, unless the returned buffer is even smaller.
+     *
+     * @param buffer direct buffer taken by {@link #takeBuffer(int)}
+     */
+    static void returnBuffer(ByteBuffer buffer) {
+        synchronized (BUFFER_POOL) {
+            if (BUFFER_POOL.size() >= MAX_POOLED_BUFFERS) {
+                ByteBuffer smallest = BUFFER_POOL.stream().min(Comparator.comparingInt(ByteBuffer::capacity)).orElseThrow();
+                if (smallest.capacity() >= buffer.capacity()) {
+                    return;
+                }
+                BUFFER_POOL.remove(smallest);
+            }
+            BUFFER_POOL.push(buffer);
+        }
+    }
+
+    /**
+     *
+     * @return number of buffers in the pool
+     */
+    static int getPooledBuffers() {
+        synchronized (BUFFER_POOL) {
+            return BUFFER_POOL.size();
+        }
+    }
+
+    private void transfer(Path srcPath, Path destPath) throws IOException {
+        long start = System.nanoTime();
+        long size;
+        try (FileChannel in = FileChannel.open(srcPath, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(destPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            size = in.size();
+            long position = 0;
+            // a throttled copy is transferred in chunks, so that the rate limit can be applied in between
+            long chunkSize = rateLimiter == null ? Long.MAX_VALUE : tuning.getBufferSize(size);
+            // transferTo may copy less than requested, e.g. on some platforms not more than 2 GB at once
+            while (position < size) {
+                long count = Math.min(size - position, chunkSize);
+                throttle(count);
+                position += in.transferTo(position, count, out);
+            }
+            if (fsync) {
+                out.force(true);
+            }
+        }
+        tuning.record(size, System.nanoTime() - start);
+        Files.setLastModifiedTime(destPath, Files.getLastModifiedTime(srcPath));
+    }
+
+    /**
+     * Waits until the given number of bytes may be copied, if a RateLimiter is used.
+     */
+    private void throttle(long bytes) throws IOException {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            rateLimiter.acquire(bytes, priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Copy was interrupted.", e);
+        }
+    }
+
+    /**
+     *
+     * @return true if the hard link was created, false if source and target are on different file systems
+     */
+    private boolean link(Path srcPath, Path destPath) throws IOException {
+        if (!isSameFileStore(srcPath, destPath)) {
+            return false;
+        }
+        try {
+            Files.createLink(destPath, srcPath);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug("Failed to create a hard link for '" + srcPath + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     *
+     * @return true if the clone was created, false if the file system does not support it
+     */
+    private boolean reflink(Path srcPath, Path destPath) throws IOException {
+        FileStore store = Files.getFileStore(destPath.getParent());
+        if (REFLINK_UNSUPPORTED.containsKey(store)) {
+            return false;
+        }
+        // Java offers no API for reflinks, GNU cp is used instead, its messages are not needed
+        java.lang.Process cp;
+        try {
+            cp = new ProcessBuilder("cp", "--reflink=always", "--preserve=timestamps", srcPath.toString(), destPath.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            // e.g. there is no cp, which would not change for the next file either
+            log.debug("Failed to run cp for a reflink, falling back to a regular copy: " + e.getMessage());
+            REFLINK_UNSUPPORTED.put(store, Boolean.TRUE);
+            return false;
+        }
+        try {
+            if (!cp.waitFor(REFLINK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                cp.destroyForcibly().waitFor();
+                Files.deleteIfExists(destPath);
+                log.warn("Cloning '" + srcPath + "' took more than " + REFLINK_TIMEOUT_SECONDS + " seconds, falling back to a regular copy.");
+                return false;
+            }
+            if (cp.exitValue() == 0) {
+                return true;
+            }
+            log.debug("Reflinks are not available on '" + store + "', falling back to a regular copy, cp exited with " + cp.exitValue() + ".");
+        } catch (InterruptedException e) {
+            cp.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Copy was interrupted.", e);
+        }
+        Files.deleteIfExists(destPath);
+        REFLINK_UNSUPPORTED.put(store, Boolean.TRUE);
+        return false;
+    }
+
+    private boolean isSameFileStore(Path srcPath, Path destPath) throws IOException {
+        return Files.getFileStore(srcPath).equals(Files.getFileStore(destPath.getParent()));
+    }
+
+    /**
+     *
+     * @param path absolute path to the file
+     * @return SHA-256 checksum of the file as hex string
+     * @throws IOException
+     */
+    static String checksum(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+
+/**
+ * Reads single metadata of the logical top-level element and of its first child from the METS file of a process with StAX, without building the
+ * UGH DigitalDocument. The metadata of an anchor is read from the anchor file next to the METS file. Reading stops at the end of the logical
+ * structMap, so the physical structure of the pages is never looked at.
+ */
+@Log4j2
+final class MetsMetadataReader {
+
+    static final String ANCHOR_FILE_SUFFIX = "_anchor.xml";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Logical structure element with the metadata that were asked for.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class LogicalElement {
+        private final String type;
+        private final boolean anchor;
+        /** values of the requested metadata, each the first one of its name */
+        private final Map<String, String> metadata;
+        /** first child element, or null if there is none */
+        private final LogicalElement firstChild;
+
+        /**
+         *
+         * @param name name of the metadata type
+         * @return the trimmed value of the first metadata of this type, or an empty string if there is none
+         */
+        String get(String name) {
+            return metadata.getOrDefault(name, "");
+        }
+
+        /**
+         * Takes the metadata of an already parsed logical structure element.
+         *
+         * @param logical logical top-level element of a DigitalDocument
+         * @param names names of the metadata types that are needed
+         * @return LogicalElement of the top-level element and its first child
+         */
+        static LogicalElement of(DocStruct logical, Collection<String> names) {
+            LogicalElement firstChild = null;
+            if (logical.getAllChildren() != null && !logical.getAllChildren().isEmpty()) {
+                DocStruct child = logical.getAllChildren().get(0);
+                firstChild = new LogicalElement(child.getType().getName(), child.getType().isAnchor(), collect(child, names), null);
+            }
+            return new LogicalElement(logical.getType().getName(), logical.getType().isAnchor(), collect(logical, names), firstChild);
+        }
+
+        private static Map<String, String> collect(DocStruct docStruct, Collection<String> names) {
+            Map<String, String> metadata = new HashMap<>();
+            for (String name : names) {
+                String value = VlmExportPlugin.findMetadata(docStruct, name);
+                if (StringUtils.isNotBlank(value)) {
+                    metadata.put(name, value);
+                }
+            }
+            return metadata;
+        }
+    }
+
+    /**
+     * What was found in one METS file.
+     */
+    private static final class ParsedFile {
+        /** requested metadata per ID of the dmdSec */
+        private final Map<String, Map<String, String>> dmdSecs = new HashMap<>();
+        private String topType;
+        private String topDmdId;
+        private String childType;
+        private String childDmdId;
+
+        private Map<String, String> getMetadata(String dmdId) {
+            return dmdId == null ? null : dmdSecs.get(dmdId);
+        }
+    }
+
+    private MetsMetadataReader() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     *
+     * @param metsFile absolute path to the METS file of the process
+     * @param names names of the metadata types that are needed
+     * @param isAnchorType tells whether a structure type of the ruleset is an anchor
+     * @return LogicalElement of the top-level element and its first child, or null if the file does not have the expected structure, in which
+     *         case it needs to be read by UGH
+     * @throws IOException
+     */
+    static LogicalElement read(Path metsFile, Collection<String> names, Predicate<String> isAnchorType) throws IOException {
+        ParsedFile mets = parse(metsFile, names);
+        if (mets == null || mets.topType == null) {
+            return null;
+        }
+        Map<String, String> topMetadata = mets.getMetadata(mets.topDmdId);
+        if (topMetadata == null) {
+            // the metadata of an anchor are kept in the anchor file
+            Path anchorFile = metsFile.resolveSibling(StringUtils.removeEnd(metsFile.getFileName().toString(), ".xml") + ANCHOR_FILE_SUFFIX);
+            ParsedFile anchor = Files.isRegularFile(anchorFile) ? parse(anchorFile, names) : null;
+            topMetadata = anchor == null ? null : anchor.getMetadata(anchor.topDmdId);
+        }
+        if (topMetadata == null) {
+            log.debug("No metadata of the logical top-level element found in '" + metsFile + "'.");
+            return null;
+        }
+        LogicalElement firstChild = null;
+        if (mets.childType != null) {
+            firstChild = new LogicalElement(mets.childType, isAnchorType.test(mets.childType),
+                    mets.dmdSecs.getOrDefault(mets.childDmdId, Collections.emptyMap()), null);
+        }
+        return new LogicalElement(mets.topType, isAnchorType.test(mets.topType), topMetadata, firstChild);
+    }
+
+    /**
+     *
+     * @return ParsedFile, or null if the file is not a METS file
+     */
+    private static ParsedFile parse(Path file, Collection<String> names) throws IOException {
+        ParsedFile parsed = new ParsedFile();
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"mets".equals(reader.getLocalName())) {
+                    return null;
+                }
+                Map<String, String> dmdSec = null;
+                boolean inLogicalStructMap = false;
+                int divDepth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if ("dmdSec".equals(element)) {
+                            dmdSec = new HashMap<>();
+                            parsed.dmdSecs.put(reader.getAttributeValue(null, "ID"), dmdSec);
+                        } else if ("metadata".equals(element) && dmdSec != null) {
+                            String name = reader.getAttributeValue(null, "name");
+                            // metadata without a name are skipped, persons and groups are no simple metadata
+                            if (name != null && names.contains(name) && StringUtils.isBlank(reader.getAttributeValue(null, "type")) && !dmdSec.containsKey(name)) {
+                                String value = reader.getElementText().trim();
+                                if (!value.isEmpty()) {
+                                    dmdSec.put(name, value);
+                                }
+                            }
+                        } else if ("structMap".equals(element)) {
+                            inLogicalStructMap = "LOGICAL".equals(reader.getAttributeValue(null, "TYPE"));
+                        } else if ("div".equals(element) && inLogicalStructMap) {
+                            divDepth++;
+                            if (divDepth == 1 && parsed.topType == null) {
+                                parsed.topType = reader.getAttributeValue(null, "TYPE");
+                                parsed.topDmdId = reader.getAttributeValue(null, "DMDID");
+                            } else if (divDepth == 2 && parsed.childType == null) {
+                                parsed.childType = reader.getAttributeValue(null, "TYPE");
+                                parsed.childDmdId = reader.getAttributeValue(null, "DMDID");
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if ("dmdSec".equals(element)) {
+                            dmdSec = null;
+                        } else if ("div".equals(element) && inLogicalStructMap) {
+                            divDepth--;
+                        } else if ("structMap".equals(element) && inLogicalStructMap) {
+                            // everything needed has been read
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            log.debug("Failed to read '" + file + "' with StAX: " + e.getMessage());
+            return null;
+        }
+        return parsed;
+    }
+
+}
@@ -0,0 +1,201 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.jcraft.jsch.SftpProgressMonitor;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Token bucket that limits the transfer rate of all exports to the same target. The bucket holds at most the tokens of one second, so that a short
+ * burst is possible after an idle period. Transfers of a higher {@link Priority} are served first: as long as one of them is waiting for tokens,
+ * transfers of a lower priority wait as well.
+ */
+@Log4j2
+final class RateLimiter {
+
+    /**
+     * Priority classes of export traffic, from highest to lowest.
+     */
+    enum Priority {
+        /** e.g. corrections that need to be published right away */
+        URGENT,
+        NORMAL,
+        /** e.g. the backlog of a mass export */
+        BULK;
+
+        /**
+         *
+         * @param value configured value, case-insensitive
+         * @return the matching Priority, or NORMAL if the value is unknown
+         */
+        static Priority parse(String value) {
+            for (Priority priority : values()) {
+                if (priority.name().equalsIgnoreCase(value.trim())) {
+                    return priority;
+                }
+            }
+            log.warn("Unknown transfer priority '" + value + "', using '" + NORMAL.name().toLowerCase() + "' instead.");
+            return NORMAL;
+        }
+    }
+
+    /** how often a transfer that waits for a higher priority checks again, in milliseconds */
+    private static final long PRIORITY_POLL_MILLIS = 10;
+
+    private static final Map<String, RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private double bytesPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    /** number of transfers waiting for tokens, per priority */
+    private final int[] waiting = new int[Priority.values().length];
+
+    private RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+    }
+
+    /**
+     * Returns the limiter shared by all exports to the given target. If the configured rate differs from the current one, the rate is changed for
+     * all exports to the target.
+     *
+     * @param target key of the target, e.g. user@host:port
+     * @param bytesPerSecond maximum transfer rate, must be positive
+     * @return RateLimiter of the target
+     */
+    static RateLimiter forTarget(String target, long bytesPerSecond) {
+        RateLimiter limiter = LIMITERS.computeIfAbsent(target, t -> new RateLimiter(bytesPerSecond));
+        limiter.setRate(bytesPerSecond);
+        return limiter;
+    }
+
+    /**
+     *
+     * @param value rate in bytes per second, optionally followed by k, M or G for multiples of 1024
+     * @return the rate in bytes per second, 0 if the value is blank or invalid
+     */
+    static long parseRate(String value) {
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        long rate = TransferTuning.parseSize(value);
+        if (rate < 0) {
+            log.warn("Invalid bandwidth '" + value + "', the transfer rate will not be limited.");
+            return 0;
+        }
+        return rate;
+    }
+
+    private synchronized void setRate(long bytesPerSecond) {
+        if (this.bytesPerSecond != bytesPerSecond) {
+            log.debug("Changing the transfer rate limit from " + (long) this.bytesPerSecond + " to " + bytesPerSecond + " bytes per second.");
+            refill();
+            this.bytesPerSecond = bytesPerSecond;
+            tokens = Math.min(tokens, bytesPerSecond);
+        }
+    }
+
+    /**
+     * Waits until the given number of bytes may be transferred. A request larger than the bucket is granted as soon as the bucket is not empty, the
+     * following requests then wait until the debt is paid off.
+     *
+     * @param bytes number of bytes that are about to be transferred
+     * @param priority Priority of the transfer
+     * @throws InterruptedException
+     */
+    synchronized void acquire(long bytes, Priority priority) throws InterruptedException {
+        waiting[priority.ordinal()]++;
+        try {
+            while (true) {
+                refill();
+                boolean preceded = isHigherPriorityWaiting(priority);
+                if (!preceded && tokens > 0) {
+                    tokens -= bytes;
+                    return;
+                }
+                long waitMillis = preceded ? PRIORITY_POLL_MILLIS : (long) Math.ceil(-tokens * 1000 / bytesPerSecond);
+                wait(Math.max(1, waitMillis));
+            }
+        } finally {
+            waiting[priority.ordinal()]--;
+            notifyAll();
+        }
+    }
+
+    private boolean isHigherPriorityWaiting(Priority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    /**
+     * JSch reports every chunk it has written to the progress monitor before it writes the next one, so blocking in the monitor throttles the
+     * upload.
+     *
+     * @param priority Priority of the upload
+     * @return UploadMonitor that throttles an upload
+     */
+    UploadMonitor asProgressMonitor(Priority priority) {
+        return new UploadMonitor(priority);
+    }
+
+    /**
+     * SftpProgressMonitor that throttles an upload. If the uploading thread is interrupted, the upload is cancelled. JSch ends a cancelled upload of
+     * an InputStream without an error, as if it was complete, so the uploader has to check {@link #isInterrupted()} afterwards.
+     */
+    final class UploadMonitor implements SftpProgressMonitor {
+
+        private final Priority priority;
+        private volatile boolean interrupted;
+
+        private UploadMonitor(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max) {
+            // nothing to prepare
+        }
+
+        @Override
+        public boolean count(long count) {
+            try {
+                acquire(count, priority);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                // cancels the upload
+                return false;
+            }
+        }
+
+        @Override
+        public void end() {
+            // nothing to clean up
+        }
+
+        /**
+         *
+         * @return true if the upload was cancelled because its thread was interrupted, in which case the remote file is incomplete
+         */
+        boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.jcraft.jsch.Session;
+
+/**
+ * Remembers the remote directories that are known to exist, per SFTP session. Since pooled sessions are reused by later exports, folders shared
+ * by several exports, such as the root folder of a multi-volume work, need to be created or looked up only once. The entries of a session are
+ * dropped together with the session.
+ */
+final class RemoteDirectoryCache {
+
+    private static final Map<Session, Set<String>> DIRECTORIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private RemoteDirectoryCache() {
+    }
+
+    /**
+     *
+     * @param session Session the directories were seen with
+     * @return modifiable set of the absolute paths of the directories that are known to exist
+     */
+    static Set<String> get(Session session) {
+        return DIRECTORIES.computeIfAbsent(session, s -> ConcurrentHashMap.newKeySet());
+    }
+
+}
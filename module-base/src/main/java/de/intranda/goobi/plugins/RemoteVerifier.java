@@ -0,0 +1,400 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Compares the SHA-256 checksums of uploaded files with the ones of their source files, in a thread of its own while the upload of the folder
+ * goes on. The remote checksums are either computed by the remote host, running sha256sum over SSH for a batch of files at once, or by reading
+ * the files back over SFTP, which transfers every file a second time and therefore has to be chosen explicitly. If the remote host does not allow
+ * to run sha256sum, only the sizes of the remote files are compared instead.
+ */
+@Log4j2
+final class RemoteVerifier {
+
+    /**
+     * How the remote checksums are determined.
+     */
+    enum Method {
+        /** every file is read back over SFTP */
+        READBACK,
+        /** sha256sum is run on the remote host for a batch of files */
+        EXEC,
+        /** only the size of every remote file is compared */
+        SIZE;
+
+        /**
+         *
+         * @param value configured value, case-insensitive
+         * @return the matching Method, or EXEC if the value is unknown
+         */
+        static Method parse(String value) {
+            for (Method method : values()) {
+                if (method.name().equalsIgnoreCase(value.trim())) {
+                    return method;
+                }
+            }
+            log.warn("Unknown verification method '" + value + "', sha256sum will be run on the remote host instead.");
+            return EXEC;
+        }
+    }
+
+    /**
+     * Receives every file whose remote checksum matches.
+     */
+    @FunctionalInterface
+    interface Listener {
+        void verified(Path srcPath, Path destPath, String checksum) throws IOException;
+    }
+
+    /**
+     * Runs on the channel used to read remote files.
+     */
+    @FunctionalInterface
+    private interface RemoteRead<T> {
+        T apply(ChannelSftp channel) throws JSchException, SftpException, IOException;
+    }
+
+    /** how often a file is read back if the connection is lost meanwhile */
+    private static final int READBACK_ATTEMPTS = 5;
+    private static final long READBACK_PAUSE_MILLIS = 1000;
+    /** how long the remote host may take to answer whether it runs sha256sum */
+    private static final long PROBE_TIMEOUT_SECONDS = 5;
+
+    private final Supplier<Session> sessions;
+    private final Path fromPath;
+    private final Path toPath;
+    private final int batchSize;
+    private final ChecksumCache checksumCache;
+    private final ExportMetrics metrics;
+    private final Listener listener;
+    private final FileQueue queue = new FileQueue();
+    /** checksums of the source files computed during their upload, by file name */
+    private final Map<String, String> sourceChecksums = new ConcurrentHashMap<>();
+    private final List<String> mismatched = Collections.synchronizedList(new ArrayList<>());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Future<Void> verification;
+    private Method method;
+    private boolean probed;
+    private ChannelSftp readChannel;
+
+    /**
+     * Starts the verification thread, which waits for the files added by {@link #add(String, String)}.
+     *
+     * @param method how the remote checksums are determined
+     * @param batchSize maximum number of files passed to one sha256sum call
+     * @param sessions supplies the current Session of the export, which the verifier opens its own channels on and which may be replaced by a new
+     *            one if the connection was lost
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the remote target folder
+     * @param checksumCache ChecksumCache providing the checksums of source files that were added without one
+     * @param metrics ExportMetrics to record the time spent on checksums
+     * @param listener Listener to be told about every verified file
+     */
+    RemoteVerifier(Method method, int batchSize, Supplier<Session> sessions, Path fromPath, Path toPath, ChecksumCache checksumCache,
+            ExportMetrics metrics, Listener listener) {
+        this.method = method;
+        this.batchSize = Math.max(1, batchSize);
+        this.sessions = sessions;
+        this.fromPath = fromPath;
+        this.toPath = toPath;
+        this.checksumCache = checksumCache;
+        this.metrics = metrics;
+        this.listener = listener;
+        verification = executor.submit(this::verifyQueued);
+    }
+
+    /**
+     *
+     * @param file name of a completely uploaded file
+     * @param checksum SHA-256 checksum of the source file computed during the upload, or null if it has to be computed by the verifier
+     */
+    void add(String file, String checksum) {
+        if (checksum != null) {
+            sourceChecksums.put(file, checksum);
+        }
+        queue.add(file);
+    }
+
+    /**
+     * Waits until all added files are verified.
+     *
+     * @return names of the files whose remote checksum differs or that are missing on the remote host
+     * @throws IOException if the verification itself failed
+     */
+    List<String> finish() throws IOException {
+        queue.complete();
+        try {
+            verification.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Verification of the uploaded files failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verification was interrupted.", e);
+        } finally {
+            close();
+        }
+        return new ArrayList<>(mismatched);
+    }
+
+    /**
+     * Stops the verification thread and disconnects its channel.
+     */
+    void close() {
+        queue.clear();
+        queue.complete();
+        sourceChecksums.clear();
+        executor.shutdownNow();
+        if (readChannel != null) {
+            readChannel.disconnect();
+        }
+    }
+
+    private Void verifyQueued() throws IOException, InterruptedException, JSchException, SftpException {
+        String file;
+        while ((file = queue.take()) != null) {
+            // the files uploaded meanwhile are checked together
+            List<String> batch = new ArrayList<>();
+            batch.add(file);
+            while (batch.size() < batchSize && queue.size() > 0 && (file = queue.take()) != null) {
+                batch.add(file);
+            }
+            verifyBatch(batch);
+        }
+        return null;
+    }
+
+    private void verifyBatch(List<String> batch) throws IOException, JSchException, SftpException, InterruptedException {
+        long start = ExportMetrics.start();
+        Map<String, String> remoteChecksums = null;
+        if (method == Method.EXEC && !probed) {
+            probed = true;
+            if (!isSha256sumAvailable()) {
+                log.warn("The remote host does not run sha256sum, only the sizes of the uploaded files will be compared.");
+                method = Method.SIZE;
+            }
+        }
+        if (method == Method.EXEC) {
+            remoteChecksums = sha256sumRemote(batch);
+            if (remoteChecksums == null) {
+                log.warn("The remote host does not run sha256sum, only the sizes of the uploaded files will be compared.");
+                method = Method.SIZE;
+            }
+        }
+        for (String file : batch) {
+            Path srcPath = fromPath.resolve(file);
+            Path destPath = toPath.resolve(file);
+            String fromChecksum = sourceChecksums.remove(file);
+            boolean valid;
+            if (method == Method.SIZE) {
+                long remoteSize = onReadChannel(channel -> statSize(channel, destPath));
+                log.debug("size of '" + destPath.toString() + "': " + remoteSize + ", expected " + Files.size(srcPath));
+                valid = remoteSize == Files.size(srcPath);
+            } else {
+                if (fromChecksum == null) {
+                    // the upload of the file was resumed, so its checksum could not be computed on the way
+                    fromChecksum = checksumCache.getOrCompute(srcPath);
+                }
+                String toChecksum = remoteChecksums == null ? onReadChannel(channel -> readBack(channel, destPath)) : remoteChecksums.get(file);
+                log.debug("checksum of '" + destPath.toString() + "': " + toChecksum + ", expected " + fromChecksum);
+                valid = fromChecksum.equals(toChecksum);
+            }
+            if (valid) {
+                listener.verified(srcPath, destPath, fromChecksum);
+            } else {
+                mismatched.add(file);
+            }
+        }
+        metrics.stopChecksum(start);
+    }
+
+    /**
+     * Runs an operation on the channel used to read remote files. If the connection was lost meanwhile, the operation is run again once the upload
+     * has reconnected the session.
+     */
+    private <T> T onReadChannel(RemoteRead<T> operation) throws JSchException, SftpException, IOException, InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                if (readChannel == null || !readChannel.isConnected()) {
+                    if (readChannel != null) {
+                        // the session was lost and has probably been reconnected by the upload
+                        readChannel.disconnect();
+                    }
+                    readChannel = (ChannelSftp) sessions.get().openChannel("sftp");
+                    readChannel.connect();
+                }
+                return operation.apply(readChannel);
+            } catch (JSchException | SftpException e) {
+                if (readChannel != null && readChannel.isConnected() || attempt >= READBACK_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Lost the connection while reading from " + toPath + ", trying again: " + e.getMessage());
+                Thread.sleep(READBACK_PAUSE_MILLIS);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return size of the remote file, or -1 if it does not exist
+     */
+    private static long statSize(ChannelSftp channel, Path destPath) throws SftpException {
+        try {
+            return channel.stat(destPath.toString()).getSize();
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a remote file back.
+     *
+     * @return SHA-256 checksum of the remote file, or null if it does not exist
+     */
+    private static String readBack(ChannelSftp channel, Path destPath) throws SftpException, IOException {
+        try (InputStream in = channel.get(destPath.toString())) {
+            return DigestUtils.sha256Hex(in);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Asks the remote host for the version of sha256sum. JSch does not wait for the answer to an exec request, so a host that does not allow to run
+     * commands at all would leave the channel open without any output.
+     *
+     * @return true if sha256sum could be run, false otherwise
+     */
+    private boolean isSha256sumAvailable() throws InterruptedException {
+        Session session = sessions.get();
+        ChannelExec exec = null;
+        try {
+            exec = (ChannelExec) session.openChannel("exec");
+            exec.setCommand("sha256sum --version");
+            exec.setInputStream(null);
+            exec.setOutputStream(OutputStream.nullOutputStream());
+            exec.connect();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(PROBE_TIMEOUT_SECONDS);
+            while (!exec.isClosed()) {
+                if (System.nanoTime() > deadline) {
+                    log.debug("sha256sum did not answer on " + session.getHost() + ".");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return exec.getExitStatus() == 0;
+        } catch (JSchException e) {
+            log.debug("Failed to run sha256sum on " + session.getHost() + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (exec != null) {
+                exec.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Runs sha256sum inside the remote target folder for the given files.
+     *
+     * @return remote checksums by file name, missing the files that could not be read, or null if sha256sum could not be run at all
+     */
+    private Map<String, String> sha256sumRemote(List<String> files) throws IOException, InterruptedException {
+        StringBuilder command = new StringBuilder("cd ").append(quote(toPath.toString())).append(" && sha256sum --");
+        for (String file : files) {
+            command.append(' ').append(quote(file));
+        }
+        Map<String, String> checksums = new HashMap<>();
+        Session session = sessions.get();
+        ChannelExec exec = null;
+        try {
+            exec = (ChannelExec) session.openChannel("exec");
+            exec.setCommand(command.toString());
+            exec.setInputStream(null);
+            InputStream in = exec.getInputStream();
+            exec.connect();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parseLine(line, checksums);
+                }
+            }
+            while (!exec.isClosed()) {
+                Thread.sleep(10);
+            }
+            // sha256sum exits with 1 if some of the files could not be read, but prints the checksums of the others
+            if (checksums.isEmpty() && exec.getExitStatus() != 0) {
+                log.debug("sha256sum exited with status " + exec.getExitStatus() + " on " + session.getHost() + ".");
+                return null;
+            }
+            return checksums;
+        } catch (JSchException e) {
+            log.debug("Failed to run sha256sum on " + session.getHost() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (exec != null) {
+                exec.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Parses a line of sha256sum, which escapes names containing a backslash or a line break and marks them with a leading backslash.
+     */
+    private static void parseLine(String line, Map<String, String> checksums) {
+        boolean escaped = line.startsWith("\\");
+        String text = escaped ? line.substring(1) : line;
+        // 64 hex digits, a space and a space or an asterisk for binary mode
+        if (text.length() < 67 || text.charAt(64) != ' ' || (text.charAt(65) != ' ' && text.charAt(65) != '*')) {
+            return;
+        }
+        String name = text.substring(66);
+        if (escaped) {
+            name = name.replace("\\n", "\n").replace("\\\\", "\\");
+        }
+        checksums.put(name, text.substring(0, 64));
+    }
+
+    /**
+     *
+     * @return the value quoted for a POSIX shell
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+}
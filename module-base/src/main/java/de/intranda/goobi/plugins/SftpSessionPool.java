@@ -0,0 +1,215 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Process-wide pool of authenticated SFTP sessions, so that consecutive exports to the same host do not need to repeat the SSH handshake. Idle
+ * sessions are kept alive by the server alive messages of JSch, checked before they are handed out again and closed once they were idle for too
+ * long. Once the pool is closed, sessions that are given back are closed right away.
+ */
+@Log4j2
+class SftpSessionPool {
+
+    private static final int MAX_IDLE_SESSIONS_PER_KEY = 4;
+    private static final long EVICTION_INTERVAL_SECONDS = 30;
+
+    private static final SftpSessionPool INSTANCE = new SftpSessionPool();
+
+    private final Map<SessionKey, Deque<IdleSession>> idleSessions = new HashMap<>();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "vlm-export-sftp-session-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed;
+
+    /**
+     * Identifies sessions that may be shared. The authentication is part of the key, so that a session is never reused with other credentials.
+     */
+    @Value
+    static class SessionKey {
+        private String hostname;
+        private int port;
+        private String username;
+        private String authentication;
+    }
+
+    /**
+     * Creates new sessions for the pool.
+     */
+    @FunctionalInterface
+    interface SessionFactory {
+        /**
+         *
+         * @return connected Session object
+         * @throws JSchException
+         */
+        Session create() throws JSchException;
+    }
+
+    @AllArgsConstructor
+    private static class IdleSession {
+        private Session session;
+        private long idleSince;
+        private long idleTimeoutMillis;
+
+        private boolean isExpired(long now) {
+            return now - idleSince > idleTimeoutMillis;
+        }
+    }
+
+    SftpSessionPool() {
+        evictor.scheduleWithFixedDelay(this::evictExpiredSessions, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     *
+     * @return the process-wide SftpSessionPool
+     */
+    static SftpSessionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Hands out an idle session that passed its health check, or creates a new one if there is none.
+     *
+     * @param key SessionKey of the requested session
+     * @param factory SessionFactory used if a new session is needed
+     * @param keepAliveSeconds interval of the server alive messages of new sessions, 0 to disable them
+     * @return connected Session object that must be given back by {@link #release(SessionKey, Session, int)} or {@link #invalidate(Session)}
+     * @throws JSchException
+     */
+    Session borrow(SessionKey key, SessionFactory factory, int keepAliveSeconds) throws JSchException {
+        Session session;
+        while ((session = pollIdleSession(key)) != null) {
+            if (isHealthy(session)) {
+                log.debug("Reusing pooled SFTP session to " + key.getHostname() + ":" + key.getPort());
+                return session;
+            }
+            invalidate(session);
+        }
+        log.debug("Opening new SFTP session to " + key.getHostname() + ":" + key.getPort());
+        session = factory.create();
+        if (keepAliveSeconds > 0) {
+            session.setServerAliveInterval((int) TimeUnit.SECONDS.toMillis(keepAliveSeconds));
+        }
+        return session;
+    }
+
+    /**
+     * Gives a borrowed session back to the pool. Disconnected sessions and sessions exceeding the pool capacity are closed.
+     *
+     * @param key SessionKey the session was borrowed with
+     * @param session Session object to be given back
+     * @param idleTimeoutSeconds time after which the session is closed if it is not borrowed again
+     */
+    void release(SessionKey key, Session session, int idleTimeoutSeconds) {
+        if (!session.isConnected()) {
+            return;
+        }
+        synchronized (idleSessions) {
+            Deque<IdleSession> sessions = closed ? null : idleSessions.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (sessions != null && sessions.size() < MAX_IDLE_SESSIONS_PER_KEY) {
+                sessions.push(new IdleSession(session, System.currentTimeMillis(), TimeUnit.SECONDS.toMillis(idleTimeoutSeconds)));
+                return;
+            }
+        }
+        invalidate(session);
+    }
+
+    /**
+     * Closes a borrowed session instead of giving it back to the pool.
+     *
+     * @param session Session object to be closed
+     */
+    void invalidate(Session session) {
+        session.disconnect();
+    }
+
+    /**
+     * Stops the eviction of expired sessions and closes all idle sessions. Sessions that are borrowed are closed when they are given back.
+     */
+    void close() {
+        evictor.shutdownNow();
+        List<Session> idle = new LinkedList<>();
+        synchronized (idleSessions) {
+            closed = true;
+            for (Deque<IdleSession> sessions : idleSessions.values()) {
+                sessions.forEach(session -> idle.add(session.session));
+            }
+            idleSessions.clear();
+        }
+        log.debug("Closing " + idle.size() + " idle SFTP session(s).");
+        idle.forEach(this::invalidate);
+    }
+
+    private Session pollIdleSession(SessionKey key) {
+        synchronized (idleSessions) {
+            Deque<IdleSession> sessions = idleSessions.get(key);
+            if (sessions == null) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            IdleSession idle;
+            while ((idle = sessions.poll()) != null) {
+                if (!idle.isExpired(now)) {
+                    return idle.session;
+                }
+                invalidate(idle.session);
+            }
+            return null;
+        }
+    }
+
+    private boolean isHealthy(Session session) {
+        if (!session.isConnected()) {
+            return false;
+        }
+        try {
+            session.sendKeepAliveMsg();
+            return true;
+        } catch (Exception e) {
+            log.debug("Pooled SFTP session failed its health check.", e);
+            return false;
+        }
+    }
+
+    private void evictExpiredSessions() {
+        List<Session> expired = new LinkedList<>();
+        synchronized (idleSessions) {
+            long now = System.currentTimeMillis();
+            for (Deque<IdleSession> sessions : idleSessions.values()) {
+                Iterator<IdleSession> iterator = sessions.iterator();
+                while (iterator.hasNext()) {
+                    IdleSession idle = iterator.next();
+                    if (idle.isExpired(now) || !idle.session.isConnected()) {
+                        iterator.remove();
+                        expired.add(idle.session);
+                    }
+                }
+            }
+            idleSessions.values().removeIf(Deque::isEmpty);
+        }
+        for (Session session : expired) {
+            log.debug("Closing idle SFTP session to " + session.getHost());
+            invalidate(session);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Lazily enumerates the files of a folder. Unlike StorageProvider.list, the names are neither collected nor sorted up front, so that a copy can
+ * start with the first file while the rest of a large folder is still being read. Hidden files and subfolders are skipped.
+ */
+final class SourceFolder {
+
+    private static final DirectoryStream.Filter<Path> FILES = path -> !path.getFileName().toString().startsWith(".") && Files.isRegularFile(path);
+
+    private SourceFolder() {
+    }
+
+    /**
+     * Reads only up to the first file of the folder.
+     *
+     * @param folder absolute path to the folder
+     * @return true if the folder does not exist or contains no files, false otherwise
+     * @throws IOException
+     */
+    static boolean isEmpty(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return true;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, FILES)) {
+            return !stream.iterator().hasNext();
+        }
+    }
+
+    /**
+     *
+     * @param folder absolute path to the folder
+     * @return DirectoryStream of the files of the folder, which needs to be closed by the caller
+     * @throws IOException
+     */
+    static DirectoryStream<Path> open(Path folder) throws IOException {
+        return Files.newDirectoryStream(folder, FILES);
+    }
+
+    /**
+     * Errors while reading the folder are thrown as DirectoryIteratorException by the returned Iterable.
+     *
+     * @param stream DirectoryStream opened by {@link #open(Path)}
+     * @return Iterable over the file names of the stream, which can be iterated only once
+     */
+    static Iterable<String> names(DirectoryStream<Path> stream) {
+        return () -> {
+            Iterator<Path> paths = stream.iterator();
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return paths.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return paths.next().getFileName().toString();
+                }
+            };
+        };
+    }
+
+}
@@ -0,0 +1,125 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Chooses the size of the buffers used to copy or upload a file. Unless a fixed size is configured, the buffer holds about
+ * {@value #TARGET_MILLIS} ms worth of data at the throughput measured so far, so that fast transfers of large images need few system calls while
+ * slow ones do not tie up memory. A buffer is never larger than the file it is used for.
+ */
+@Log4j2
+final class TransferTuning {
+
+    static final int MIN_BUFFER_SIZE = 64 * 1024;
+    static final int MAX_BUFFER_SIZE = 8 * 1024 * 1024;
+    /** buffer size until the first throughput is measured */
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    /** smallest buffer used for small files */
+    private static final int SMALL_FILE_BUFFER_SIZE = 8 * 1024;
+    private static final long TARGET_MILLIS = 20;
+    /** weight of a new measurement in the average throughput */
+    private static final double SMOOTHING = 0.2;
+
+    private final int fixedBufferSize;
+    /** average throughput in bytes per nanosecond, 0 until the first measurement */
+    private double bytesPerNano;
+
+    /**
+     *
+     * @param fixedBufferSize buffer size in bytes, or 0 if it should be chosen from the measured throughput
+     */
+    TransferTuning(long fixedBufferSize) {
+        this.fixedBufferSize = fixedBufferSize <= 0 ? 0 : (int) Math.max(SMALL_FILE_BUFFER_SIZE, Math.min(fixedBufferSize, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     *
+     * @param value size in bytes, optionally followed by k, M or G for multiples of 1024, or auto
+     * @return TransferTuning with the given fixed buffer size, or an adaptive one if the value is auto, blank or invalid
+     */
+    static TransferTuning parse(String value) {
+        if (value == null || value.isBlank() || "auto".equalsIgnoreCase(value.trim())) {
+            return new TransferTuning(0);
+        }
+        long size = parseSize(value);
+        if (size <= 0) {
+            log.warn("Invalid buffer size '" + value + "', the buffer size will be chosen automatically.");
+        }
+        return new TransferTuning(size);
+    }
+
+    /**
+     *
+     * @param value size in bytes, optionally followed by k, M or G for multiples of 1024
+     * @return the size in bytes, or -1 if the value is not a number
+     */
+    static long parseSize(String value) {
+        String size = value.trim();
+        if (size.isEmpty()) {
+            return -1;
+        }
+        long factor = 1;
+        switch (Character.toUpperCase(size.charAt(size.length() - 1))) {
+            case 'K':
+                factor = 1024L;
+                break;
+            case 'M':
+                factor = 1024L * 1024;
+                break;
+            case 'G':
+                factor = 1024L * 1024 * 1024;
+                break;
+            default:
+                break;
+        }
+        if (factor > 1) {
+            size = size.substring(0, size.length() - 1).trim();
+        }
+        try {
+            return Long.parseLong(size) * factor;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     *
+     * @param fileSize size of the file that is about to be transferred
+     * @return size of the buffer to use for the file
+     */
+    int getBufferSize(long fileSize) {
+        long size;
+        if (fixedBufferSize > 0) {
+            size = fixedBufferSize;
+        } else {
+            double throughput = getThroughput();
+            size = throughput == 0 ? DEFAULT_BUFFER_SIZE : (long) (throughput * TimeUnit.MILLISECONDS.toNanos(TARGET_MILLIS));
+            size = Math.max(MIN_BUFFER_SIZE, Math.min(size, MAX_BUFFER_SIZE));
+        }
+        return (int) Math.max(SMALL_FILE_BUFFER_SIZE, Math.min(size, fileSize));
+    }
+
+    /**
+     * Adds a finished transfer to the measured throughput. Transfers of small files say more about latency than about throughput and are
+     * ignored.
+     *
+     * @param bytes number of bytes transferred
+     * @param nanos duration of the transfer in nanoseconds
+     */
+    void record(long bytes, long nanos) {
+        if (fixedBufferSize > 0 || bytes < MIN_BUFFER_SIZE || nanos <= 0) {
+            return;
+        }
+        double throughput = (double) bytes / nanos;
+        synchronized (this) {
+            bytesPerNano = bytesPerNano == 0 ? throughput : bytesPerNano + SMOOTHING * (throughput - bytesPerNano);
+        }
+    }
+
+    private synchronized double getThroughput() {
+        return bytesPerNano;
+    }
+
+}
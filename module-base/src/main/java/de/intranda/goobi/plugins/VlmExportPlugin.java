@@ -1,21 +1,54 @@
 package de.intranda.goobi.plugins;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
-import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.util.StringUtil;
 import org.goobi.beans.Process;
@@ -30,9 +63,14 @@ import com.jcraft.jsch.ChannelSftp.LsEntry;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
 
-import de.sub.goobi.config.ConfigPlugins;
+import de.intranda.goobi.plugins.ExportConfiguration.ConfigBlock;
+import de.intranda.goobi.plugins.ExportConfiguration.Condition;
+import de.intranda.goobi.plugins.ExportMetrics.Phase;
+import de.intranda.goobi.plugins.MetsMetadataReader.LogicalElement;
 import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.StorageProviderInterface;
@@ -41,6 +79,7 @@ import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.ExportFileException;
 import de.sub.goobi.helper.exceptions.SwapException;
 import de.sub.goobi.helper.exceptions.UghHelperException;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
@@ -49,7 +88,7 @@ import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
-import ugh.dl.Fileformat;
+import ugh.dl.DocStructType;
 import ugh.dl.Metadata;
 import ugh.dl.Prefs;
 import ugh.exceptions.DocStructHasNoTypeException;
@@ -66,6 +105,14 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
     private static final long serialVersionUID = 4183263742109935015L;
     private static final String ABORTION_MESSAGE = "Export aborted for process with ID ";
     private static final String COMPLETION_MESSAGE = "Export executed for process with ID ";
+    private static final long WORKER_SHUTDOWN_TIMEOUT_MINUTES = 5;
+    private static final int SKIP_UPLOAD = -1;
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String REPLACED_SUFFIX = ".replaced";
+    /** the archive is handed to JSch in large chunks, so that the upload is not slowed down by the small tar headers */
+    private static final int ARCHIVE_BUFFER_SIZE = 256 * 1024;
+    /** Goobi variables such as {meta.CatalogIDDigital} or $(metas.Author), which need the parsed mets file */
+    private static final Pattern METADATA_VARIABLE = Pattern.compile("[({]metas?\\.");
     @Getter
     private String title = "intranda_export_vlm";
     @Getter
@@ -75,16 +122,89 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
     private Step step;
 
     @Getter
-    private List<String> problems;
-
-    private transient ChannelSftp sftpChannel;
+    private List<String> problems = Collections.synchronizedList(new LinkedList<>());
+
+    private transient volatile Session jschSession;
+    @Getter(AccessLevel.PACKAGE)
+    private transient volatile ChannelSftp sftpChannel;
+    private final transient List<ChannelSftp> openChannels = Collections.synchronizedList(new LinkedList<>());
+    @Setter(AccessLevel.PACKAGE)
+    private int sftpRetries;
+    @Setter(AccessLevel.PACKAGE)
+    private long sftpRetryBackoff;
+    private long sftpRetryMaxBackoff = 60000;
+    private int sftpBulkRequests;
+    @Setter(AccessLevel.PACKAGE)
+    private int sftpChannels;
+    private boolean useSessionPool;
+    private int sessionIdleTimeout;
+    private int sessionKeepAlive;
+    private transient SftpSessionPool.SessionKey sessionKey;
+    @Setter(AccessLevel.PACKAGE)
     private String knownHosts;
+    @Setter(AccessLevel.PACKAGE)
     private String username;
+    @Setter(AccessLevel.PACKAGE)
     private String hostname;
+    @Setter(AccessLevel.PACKAGE)
     private String password;
     private String keyPath;
+    @Setter(AccessLevel.PACKAGE)
     private int port;
-
+    @Setter(AccessLevel.PACKAGE)
+    private int threads;
+    private boolean fsync;
+    private transient TransferTuning transferTuning = new TransferTuning(0);
+    @Setter(AccessLevel.PACKAGE)
+    private LocalFileCopier.Mode localCopyMode;
+    private boolean verifyClones;
+    @Setter(AccessLevel.PACKAGE)
+    private boolean deltaExport;
+    @Setter(AccessLevel.PACKAGE)
+    private boolean deltaChecksum;
+    private boolean useChecksumCache;
+    @Setter(AccessLevel.PACKAGE)
+    private boolean useJournal;
+    private transient ExportJournal journal = ExportJournal.disabled();
+    @Setter(AccessLevel.PACKAGE)
+    private boolean verifySftp;
+    @Setter(AccessLevel.PACKAGE)
+    private RemoteVerifier.Method verifyMethod = RemoteVerifier.Method.EXEC;
+    @Setter(AccessLevel.PACKAGE)
+    private int verifyBatchSize;
+    @Setter(AccessLevel.PACKAGE)
+    private Path processFolder;
+    @Setter(AccessLevel.PACKAGE)
+    private transient ChecksumCache checksumCache;
+    private transient ExportMetrics metrics = new ExportMetrics();
+    private transient RateLimiter rateLimiter;
+    private RateLimiter.Priority transferPriority = RateLimiter.Priority.NORMAL;
+    @Setter(AccessLevel.PACKAGE)
+    private boolean useSftp;
+    private boolean useSshKey;
+    private Path sourcePath;
+    @Setter(AccessLevel.PACKAGE)
+    private transient List<AdditionalFolder> additionalFolders = new ArrayList<>();
+    private Path rootPath;
+    @Setter(AccessLevel.PACKAGE)
+    private Path targetPath;
+    private Path ctlPath;
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private boolean useStaging;
+    @Setter(AccessLevel.PACKAGE)
+    private ArchiveWriter.Format archiveFormat = ArchiveWriter.Format.NONE;
+    @Getter(AccessLevel.PACKAGE)
+    private transient Path stagingPath;
+    private transient boolean stagingReused;
+    private int batchThreads;
+    private boolean batchMode;
+    private String configBlockId;
+    private boolean async;
+    private int asyncThreads;
+    private int asyncQueueSize;
+
+    @Setter(AccessLevel.PACKAGE)
     private Process process;
 
     private transient VariableReplacer vp;
@@ -114,31 +234,183 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
 
         log.debug("=============================== Starting VLM Export ===============================");
 
+        if (!prepareExport(process, destination, ExportConfiguration.getInstance(title))) {
+            return false;
+        }
+        if (async) {
+            return enqueueExport();
+        }
+        return executeExport();
+    }
+
+    /**
+     * Hands the prepared export over to the VlmExportQueue and returns without waiting for it. The outcome is written to the journal of the
+     * process once the export finished. This plugin instance must not be used for another export meanwhile.
+     * 
+     * @return true if the export was enqueued, or the outcome of the export if the queue was full and it was executed right away
+     */
+    private boolean enqueueExport() {
+        String target = getTargetKey();
+        AtomicBoolean success = new AtomicBoolean();
+        Runnable cancel = () -> {
+            logBoth(process.getId(), LogType.ERROR, "Asynchronous export was cancelled, since the application was shut down before it started.");
+            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+        };
+        boolean enqueued = VlmExportQueue.getInstance().submit(target, asyncThreads, asyncQueueSize, () -> success.set(executeQueuedExport()), cancel);
+        if (!enqueued) {
+            return success.get();
+        }
+        logBoth(process.getId(), LogType.INFO, "Export was enqueued, " + VlmExportQueue.getInstance().getPendingExports(target)
+                + " export(s) to " + target + " are waiting or running.");
+        return true;
+    }
+
+    /**
+     * 
+     * @return true if the queued export was successful, false otherwise
+     */
+    private boolean executeQueuedExport() {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            success = executeExport();
+        } catch (RuntimeException e) {
+            logBoth(process.getId(), LogType.ERROR, "Error happened: " + e);
+        }
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start);
+        if (success) {
+            logBoth(process.getId(), LogType.INFO, "Asynchronous export finished successfully after " + seconds + " s.");
+        } else {
+            logBoth(process.getId(), LogType.ERROR, "Asynchronous export failed after " + seconds + " s.");
+        }
+        return success;
+    }
+
+    /**
+     * Exports several processes in one run. The plugin configuration is resolved only once for all of them. Processes are grouped by their config
+     * block and target, every group is exported by up to `batchThreads` workers of a pool shared by all groups, which is as large as the largest
+     * `batchThreads`. Processes with the same target folder are exported one after another. SFTP sessions are always pooled, so that consecutive
+     * exports to the same host reuse them.
+     * 
+     * @param processes processes to be exported
+     * @return one VlmExportResult per process, in the order of the given list
+     */
+    public List<VlmExportResult> startBatchExport(List<Process> processes) {
+        log.debug("=============================== Starting VLM Batch Export ===============================");
+        ExportConfiguration configuration = ExportConfiguration.getInstance(title);
+        Map<Integer, VlmExportResult> results = new ConcurrentHashMap<>();
+        Map<String, List<VlmExportPlugin>> groups = new LinkedHashMap<>();
+
+        for (Process p : processes) {
+            long start = System.currentTimeMillis();
+            VlmExportPlugin job = new VlmExportPlugin();
+            job.batchMode = true;
+            boolean prepared;
+            try {
+                prepared = job.prepareExport(p, p.getProjekt().getDmsImportImagesPath(), configuration);
+            } catch (IOException | SwapException | DAOException | RuntimeException e) {
+                // e.g. an incomplete configuration or METS file only fails this process, not the whole batch
+                job.logBoth(p.getId(), LogType.ERROR, "Error happened: " + e);
+                prepared = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.logBoth(p.getId(), LogType.ERROR, "Export was interrupted.");
+                prepared = false;
+            }
+            if (prepared) {
+                groups.computeIfAbsent(job.getBatchGroupKey(), k -> new LinkedList<>()).add(job);
+            } else {
+                results.put(p.getId(), job.createResult(p, false, start));
+            }
+        }
+
+        // all groups share one pool of workers, so that the batch never runs more exports at once than the largest group may
+        int batchThreads = 1;
+        for (List<VlmExportPlugin> jobs : groups.values()) {
+            batchThreads = Math.max(batchThreads, jobs.get(0).batchThreads);
+        }
+        BatchScheduler<VlmExportPlugin> scheduler = new BatchScheduler<>(batchThreads);
+        for (Map.Entry<String, List<VlmExportPlugin>> group : groups.entrySet()) {
+            List<VlmExportPlugin> jobs = group.getValue();
+            log.debug("Exporting " + jobs.size() + " process(es) of group '" + group.getKey() + "' using up to " + jobs.get(0).batchThreads
+                    + " thread(s).");
+            for (VlmExportPlugin job : jobs) {
+                // exports into the same target folder, e.g. a repeated process, must not run at the same time
+                scheduler.add(group.getKey(), job.batchThreads, String.valueOf(job.targetPath), job);
+            }
+        }
+        try {
+            scheduler.run(job -> {
+                long start = System.currentTimeMillis();
+                boolean success = false;
+                try {
+                    success = job.executeExport();
+                } catch (RuntimeException e) {
+                    job.logBoth(job.process.getId(), LogType.ERROR, "Error happened: " + e);
+                }
+                results.put(job.process.getId(), job.createResult(job.process, success, start));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Batch export was interrupted.");
+        }
+
+        List<VlmExportResult> summary = new LinkedList<>();
+        for (Process p : processes) {
+            VlmExportResult result = results.get(p.getId());
+            summary.add(result != null ? result : new VlmExportResult(p.getId(), p.getTitel(), false, 0, List.of("Export was not executed.")));
+        }
+        log.debug("=============================== Stopping VLM Batch Export ===============================");
+        return summary;
+    }
+
+    /**
+     * Reads the METS file and the configuration of the process and determines source and target of the export. No data is transfered yet.
+     * 
+     * @param process process to be exported
+     * @param destination target path used if no path is configured
+     * @param configuration cached plugin configuration
+     * @return true if the export is ready to be executed, false otherwise
+     */
+    private boolean prepareExport(Process process, String destination, ExportConfiguration configuration)
+            throws IOException, InterruptedException, SwapException, DAOException {
         String masterPath = process.getImagesOrigDirectory(false);
         log.debug("masterPath is: " + masterPath);
         // assure that the source folder is not empty
-        if (new File(masterPath).list().length == 0) {
+        if (SourceFolder.isEmpty(Paths.get(masterPath))) {
             logBoth(process.getId(), LogType.ERROR, "There is nothing to copy from '" + masterPath + "', it is empty!");
             logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
             return false;
         }
-        DocStruct logical = null;
-        // read mets file to get its logical structure
+        metrics = new ExportMetrics();
+        this.process = process;
+        // the mets file is only parsed completely if the conditions of the config blocks use its metadata
+        DigitalDocument dd = null;
+        Prefs prefs = null;
+        long start = ExportMetrics.start();
         try {
-            this.process = process;
-            Fileformat ff = process.readMetadataFile();
-            DigitalDocument dd = ff.getDigitalDocument();
-            logical = dd.getLogicalDocStruct();
-            Prefs prefs = process.getRegelsatz().getPreferences();
+            prefs = process.getRegelsatz().getPreferences();
+            if (usesMetadataVariables(configuration.getBlocks(process.getProjekt().getTitel()))) {
+                dd = process.readMetadataFile().getDigitalDocument();
+            }
             vp = new VariableReplacer(dd, prefs, process, null);
         } catch (ReadException | PreferencesException | IOException | SwapException e) {
             logBoth(process.getId(), LogType.ERROR, "Error happened: " + e);
             logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
             return false;
+        } finally {
+            metrics.stop(Phase.METADATA, start);
         }
 
         // read information from config file
-        HierarchicalConfiguration config = getConfig();
+        start = ExportMetrics.start();
+        HierarchicalConfiguration config = getConfig(configuration);
+        metrics.stop(Phase.CONFIGURATION, start);
+        if (config == null) {
+            logBoth(process.getId(), LogType.ERROR, "No matching config block found for the VLM export.");
+            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+            return false;
+        }
         String path = config.getString("path").trim();
         // destination will be used as default value only if <path> is not configured
         // hence we only have to assure that it is not null in that scenario
@@ -146,7 +418,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
             log.debug("Target 'path' is not configured, using default settings instead.");
             if (StringUtils.isBlank(destination)) {
                 log.debug("The parameter 'destination' is invalid, restarting export with default settings.");
-                return startExport(process);
+                return prepareExport(process, process.getProjekt().getDmsImportImagesPath(), configuration);
             }
             path = destination;
         }
@@ -161,6 +433,34 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
             return false;
         }
 
+        // read the logical structure, only the identifier and the volume are needed unless the settings use further metadata
+        LogicalElement logical = null;
+        start = ExportMetrics.start();
+        try {
+            List<String> fields = List.of(fieldIdentifier, fieldVolume);
+            if (dd == null && usesMetadataVariables(config)) {
+                dd = process.readMetadataFile().getDigitalDocument();
+                vp = new VariableReplacer(dd, prefs, process, null);
+            }
+            if (dd == null) {
+                Prefs ruleset = prefs;
+                logical = MetsMetadataReader.read(Paths.get(process.getMetadataFilePath()), fields, type -> isAnchorType(ruleset, type));
+            }
+            if (logical == null) {
+                if (dd == null) {
+                    log.debug("The mets file could not be read partially, it will be parsed completely.");
+                    dd = process.readMetadataFile().getDigitalDocument();
+                }
+                logical = LogicalElement.of(dd.getLogicalDocStruct(), fields);
+            }
+        } catch (ReadException | PreferencesException | IOException | SwapException e) {
+            logBoth(process.getId(), LogType.ERROR, "Error happened: " + e);
+            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+            return false;
+        } finally {
+            metrics.stop(Phase.METADATA, start);
+        }
+
         Path savingPath;
 
         String id = ""; // aimed to be the system number, e.g. ALMA MMS-ID
@@ -174,7 +474,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
         log.debug("target path = " + path);
 
         // get the ID
-        id = findMetadata(logical, fieldIdentifier);
+        id = logical.get(fieldIdentifier);
         // assure that id is valid
         if (StringUtils.isBlank(id)) {
             logBoth(process.getId(), LogType.ERROR, "No valid id found. It seems that " + fieldIdentifier + " is invalid. Recheck it please.");
@@ -208,10 +508,10 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
         }
 
         // 2. check if an anchor file exists
-        if (!hasAnchorSplitter && logical.getType().isAnchor()) {
+        if (!hasAnchorSplitter && logical.isAnchor()) {
             isOneVolumeWork = false;
-            logical = logical.getAllChildren().get(0);
-            volumeTitle = findMetadata(logical, fieldVolume).replace(" ", "_");
+            LogicalElement volume = logical.getFirstChild();
+            volumeTitle = volume == null ? "" : volume.get(fieldVolume).replace(" ", "_");
             if (StringUtils.isBlank(volumeTitle)) {
                 // metadata value is missing, try to get it from process name
                 if (process.getTitel().contains("_")) {
@@ -226,14 +526,71 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
             }
         }
 
+        // number of files that are copied concurrently
+        threads = Math.max(1, config.getInt("threads", 1));
+        log.debug("threads = " + threads);
+        // whether copies should be forced to disk before they are read again for the checksum check
+        fsync = config.getBoolean("fsync", false);
+        log.debug("fsync = " + fsync);
+        // how local copies are made, see LocalFileCopier.Mode
+        localCopyMode = LocalFileCopier.Mode.parse(config.getString("localCopyMode", "stream"));
+        // whether clones made by reflink are verified by their checksums instead of their sizes only
+        verifyClones = config.getBoolean("localCopyMode/@verify", false);
+        log.debug("localCopyMode = " + localCopyMode + ", verify = " + verifyClones);
+        // size of the buffers used to copy and upload files, chosen from the file size and the measured throughput unless it is configured
+        transferTuning = TransferTuning.parse(config.getString("bufferSize", "auto"));
+        log.debug("bufferSize = " + config.getString("bufferSize", "auto"));
+        // whether only new or changed files should be copied instead of replacing the whole target folder
+        deltaExport = config.getBoolean("deltaExport", false);
+        deltaChecksum = config.getBoolean("deltaExport/@checksum", false);
+        log.debug("deltaExport = " + deltaExport);
+        log.debug("deltaChecksum = " + deltaChecksum);
+        // whether checksums of the source files should be kept in a sidecar file of the process for later exports
+        useChecksumCache = config.getBoolean("checksumCache", false);
+        processFolder = Paths.get(process.getProcessDataDirectory());
+        log.debug("useChecksumCache = " + useChecksumCache);
+        // whether transferred files should be recorded in a journal in the process folder, so that an interrupted export can be continued
+        useJournal = config.getBoolean("journal", false);
+        log.debug("useJournal = " + useJournal);
+        // whether files should be copied into a hidden staging folder that is renamed into place once the copy is complete
+        useStaging = config.getBoolean("staging", false);
+        log.debug("useStaging = " + useStaging);
+        // folders of the process that are exported into subfolders of the target folder in addition to the master images
+        additionalFolders = new ArrayList<>();
+        for (HierarchicalConfiguration folderConfig : config.configurationsAt("additionalFolders/folder")) {
+            String source = vp.replace(folderConfig.getString("@source", "")).trim();
+            String target = folderConfig.getString("@target", "").trim();
+            if (StringUtils.isBlank(source) || StringUtils.isBlank(target) || target.startsWith(".") || StringUtils.containsAny(target, "/\\")) {
+                logBoth(process.getId(), LogType.ERROR,
+                        "The additional folder '" + source + "' needs a source and a target subfolder name that is neither hidden nor nested.");
+                logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+                return false;
+            }
+            Path sourceFolder = Paths.get(source);
+            if (SourceFolder.isEmpty(sourceFolder)) {
+                log.debug("The additional folder '" + source + "' is missing or empty, it will not be exported.");
+                continue;
+            }
+            additionalFolders.add(new AdditionalFolder(sourceFolder, target));
+        }
+        log.debug("additionalFolders = " + additionalFolders);
+
         log.debug("isOneVolumeWork = " + isOneVolumeWork);
         log.debug("id = " + id);
         if (!isOneVolumeWork) {
             log.debug("volumeTitle = " + volumeTitle);
         }
 
+        // number of processes of the same group that are exported concurrently by a batch export
+        batchThreads = Math.max(1, config.getInt("batchThreads", 1));
+        // whether the export should be executed in the background, and how many exports per target may run or wait meanwhile
+        async = !batchMode && config.getBoolean("async", false);
+        asyncThreads = Math.max(1, config.getInt("async/@threads", 2));
+        asyncQueueSize = Math.max(1, config.getInt("async/@queueSize", 50));
+        log.debug("async = " + async);
+
         // prepare sftpChannel if necessary
-        boolean useSftp = config.getBoolean("sftp", false);
+        useSftp = config.getBoolean("sftp", false);
         if (useSftp) {
             username = config.getString("username").trim();
             hostname = config.getString("hostname").trim();
@@ -244,12 +601,17 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
                 return false;
             }
 
-            boolean useSshKey = config.getBoolean("useSshKey", false);
+            useSshKey = config.getBoolean("useSshKey", false);
             log.debug("useSshKey = " + useSshKey);
 
             password = config.getString("password", "").trim();
             keyPath = config.getString("keyPath", "").trim();
             port = config.getInt("port", 22);
+            verifySftp = config.getBoolean("verifySftp", false);
+            // whether the remote checksums are computed by sha256sum on the remote host or by reading the files back, and how many files per call
+            verifyMethod = RemoteVerifier.Method.parse(config.getString("verifySftp/@method", "exec"));
+            verifyBatchSize = Math.max(1, config.getInt("verifySftp/@batchSize", 100));
+            log.debug("verifySftp = " + verifySftp + ", method = " + verifyMethod);
 
             knownHosts = config.getString("knownHosts").trim();
             if (StringUtil.isBlank(knownHosts)) {
@@ -257,84 +619,273 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
             }
             log.debug("knownHosts = " + knownHosts);
 
-            try {
-                sftpChannel = useSshKey ? setupJSchWithKey() : setupJSchWithPassword();
-                sftpChannel.connect();
-            } catch (JSchException e) {
-                log.debug("failed to initialize sftpChannel");
-                return false;
-            }
+            // number of channels that are used to upload files concurrently
+            sftpChannels = Math.max(1, config.getInt("sftpChannels", 1));
+            log.debug("sftpChannels = " + sftpChannels);
+            // number of write requests every channel keeps in flight before it waits for an acknowledgement, 0 keeps the default of JSch
+            sftpBulkRequests = Math.max(0, config.getInt("sftpBulkRequests", 0));
+            log.debug("sftpBulkRequests = " + sftpBulkRequests);
+            // how often a failed upload should be continued, and how long to wait before the first retry
+            sftpRetries = Math.max(0, config.getInt("sftpRetries", 0));
+            sftpRetryBackoff = Math.max(0, config.getLong("sftpRetries/@backoff", 1000));
+            sftpRetryMaxBackoff = Math.max(sftpRetryBackoff, config.getLong("sftpRetries/@maxBackoff", 60000));
+            log.debug("sftpRetries = " + sftpRetries);
+
+            // whether authenticated sessions should be kept open for later exports to the same host
+            useSessionPool = batchMode || config.getBoolean("sessionPool", false);
+            sessionIdleTimeout = config.getInt("sessionPool/@idleTimeout", 300);
+            sessionKeepAlive = config.getInt("sessionPool/@keepAlive", 60);
+            log.debug("useSessionPool = " + useSessionPool);
         }
 
-        // id is already assured valid, let's create a folder named after it
-        savingPath = savingPath.resolve(id);
-        if (!createFolder(useSftp, savingPath)) {
-            logBoth(process.getId(), LogType.ERROR, "Something went wrong trying to create the directory: " + savingPath.toString());
-            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
-            return false;
+        // whether the target folder should be uploaded as a single archive file instead of file by file
+        archiveFormat = useSftp ? ArchiveWriter.Format.parse(config.getString("archive", "none")) : ArchiveWriter.Format.NONE;
+        if (archiveFormat != ArchiveWriter.Format.NONE && (useStaging || deltaExport)) {
+            // the archive is always uploaded completely under a temporary name and renamed into place
+            log.debug("Staging and delta export are not used when exporting an archive.");
+            useStaging = false;
+            deltaExport = false;
         }
-
-        Path ctlPath = null; // the .ctl file should be created next to the root folder
-        // now we have the root folder, great, let's find out if we need to create subfolders
+        log.debug("archiveFormat = " + archiveFormat);
+
+        // maximum transfer rate shared by all exports to the same target, and the priority class of this export's transfers
+        long bandwidth = RateLimiter.parseRate(config.getString("bandwidth", ""));
+        transferPriority = RateLimiter.Priority.parse(config.getString("bandwidth/@priority", "normal"));
+        rateLimiter = bandwidth > 0 ? RateLimiter.forTarget(getTargetKey(), bandwidth) : null;
+        log.debug("bandwidth = " + bandwidth + ", priority = " + transferPriority);
+
+        sourcePath = Paths.get(masterPath);
+        // id is already assured valid, the root folder will be named after it
+        rootPath = savingPath.resolve(id);
+        targetPath = rootPath;
+        ctlPath = null; // the .ctl file should be created next to the root folder
         // subfolders are only needed if the book is not a one-volume work
         if (!isOneVolumeWork) {
-            // volumeTitle is already assured, let's try to create a subfolder
-            String subfolderName = subfolderPrefix + volumeTitle;
-            ctlPath = savingPath;
-            savingPath = savingPath.resolve(subfolderName);
-            if (!createFolder(useSftp, savingPath)) {
-                logBoth(process.getId(), LogType.ERROR, "Something went wrong trying to create the directory: " + savingPath.toString());
+            // volumeTitle is already assured
+            ctlPath = rootPath;
+            targetPath = rootPath.resolve(subfolderPrefix + volumeTitle);
+        }
+        return true;
+    }
+
+    /**
+     * Creates the target folders and copies the data as determined by {@link #prepareExport(Process, String, ExportConfiguration)}.
+     * 
+     * @return true if the export was successful, false otherwise
+     */
+    private boolean executeExport() {
+        boolean success = false;
+        try {
+            success = executeExportSteps();
+            return success;
+        } finally {
+            closeChannels();
+            closeSession(true);
+            logMetrics(success);
+            log.debug("=============================== Stopping VLM Export ===============================");
+        }
+    }
+
+    private boolean executeExportSteps() {
+        long start = ExportMetrics.start();
+        boolean connected = !useSftp || connectSftp();
+        metrics.stop(Phase.CONNECTION, start);
+        if (!connected) {
+            return false;
+        }
+
+        start = ExportMetrics.start();
+        try {
+            // let's create the root folder
+            // when staging is used, the target folder only comes into existence by renaming the staging folder
+            // and when an archive is exported, there is no target folder at all
+            boolean createTarget = !useStaging && archiveFormat == ArchiveWriter.Format.NONE;
+            Path rootFolder = !createTarget && targetPath.equals(rootPath) ? rootPath.getParent() : rootPath;
+            if (!createFolder(useSftp, rootFolder)) {
+                logBoth(process.getId(), LogType.ERROR, "Something went wrong trying to create the directory: " + rootFolder.toString());
                 logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
                 return false;
             }
+            // now we have the root folder, great, let's create the subfolder if needed
+            if (createTarget && !targetPath.equals(rootPath) && !createFolder(useSftp, targetPath)) {
+                logBoth(process.getId(), LogType.ERROR, "Something went wrong trying to create the directory: " + targetPath.toString());
+                logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+                return false;
+            }
+            if (useStaging && !prepareStaging()) {
+                logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+                return false;
+            }
+        } finally {
+            metrics.stop(Phase.FOLDERS, start);
         }
+
         // if everything went well so far, then we only need to do the copy
-        return tryCopy(process, Paths.get(masterPath), savingPath, ctlPath, useSftp);
+        start = ExportMetrics.start();
+        try {
+            return tryCopy(process, sourcePath, targetPath, ctlPath, useSftp);
+        } finally {
+            metrics.stop(Phase.COPY, start);
+        }
+    }
+
+    /**
+     * Writes the metrics of the finished export into the journal and adds them to the VlmExportStatistics.
+     * 
+     * @param success true if the export was successful, false otherwise
+     */
+    private void logMetrics(boolean success) {
+        logBoth(process.getId(), LogType.INFO, "Export metrics: " + metrics.toString() + ".");
+        VlmExportStatistics.getInstance().record(metrics, success);
+    }
+
+    /**
+     * Opens the SFTP session, either a new one or one from the session pool, and the first SFTP channel on it.
+     * 
+     * @return true if the channel is connected, false otherwise
+     */
+    boolean connectSftp() {
+        try {
+            openSession();
+            sftpChannel = openSftpChannel();
+            return true;
+        } catch (JSchException e) {
+            logBoth(process.getId(), LogType.ERROR, "Failed to connect to " + username + "@" + hostname + ":" + port + ": " + e.getMessage());
+            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+            closeSession(false);
+            return false;
+        }
+    }
+
+    /**
+     * Opens the SFTP session, either a new one or one from the session pool.
+     * 
+     * @throws JSchException
+     */
+    private void openSession() throws JSchException {
+        SftpSessionPool.SessionFactory sessionFactory = useSshKey ? this::setupJSchWithKey : this::setupJSchWithPassword;
+        if (useSessionPool) {
+            String authentication = useSshKey ? "key:" + keyPath : "password:" + DigestUtils.sha256Hex(password) + ":" + knownHosts;
+            sessionKey = new SftpSessionPool.SessionKey(hostname, port, username, authentication);
+            jschSession = SftpSessionPool.getInstance().borrow(sessionKey, sessionFactory, sessionKeepAlive);
+        } else {
+            jschSession = sessionFactory.create();
+        }
+    }
+
+    /**
+     * 
+     * @return key of the batch group this export belongs to, consisting of its config block and its target
+     */
+    private String getBatchGroupKey() {
+        return configBlockId + "|" + getTargetKey();
+    }
+
+    /**
+     * 
+     * @return key of the target of this export, user@host:port for SFTP targets
+     */
+    private String getTargetKey() {
+        return useSftp ? username + "@" + hostname + ":" + port : "local";
+    }
+
+    /**
+     * 
+     * @param process exported process
+     * @param success true if the export was successful, false otherwise
+     * @param start start time of the export in milliseconds
+     * @return VlmExportResult of this export
+     */
+    private VlmExportResult createResult(Process process, boolean success, long start) {
+        List<String> messages;
+        synchronized (problems) {
+            messages = List.copyOf(problems);
+        }
+        return new VlmExportResult(process.getId(), process.getTitel(), success, System.currentTimeMillis() - start, messages);
+    }
+
+    /**
+     * 
+     * @param blocks config blocks of the project
+     * @return true if a condition of one of the blocks uses Goobi variables of the metadata
+     */
+    private static boolean usesMetadataVariables(List<ConfigBlock> blocks) {
+        for (ConfigBlock block : blocks) {
+            for (Condition condition : block.getConditions()) {
+                if (condition.getField() != null && METADATA_VARIABLE.matcher(condition.getField()).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 
+     * @param config settings of the config block
+     * @return true if one of the settings uses Goobi variables of the metadata
+     */
+    private static boolean usesMetadataVariables(HierarchicalConfiguration config) {
+        Iterator<String> keys = config.getKeys();
+        while (keys.hasNext()) {
+            for (Object value : config.getList(keys.next())) {
+                if (value != null && METADATA_VARIABLE.matcher(value.toString()).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 
+     * @param prefs ruleset of the process
+     * @param type name of a structure type
+     * @return true if the type is an anchor, false if it is not or is unknown
+     */
+    private static boolean isAnchorType(Prefs prefs, String type) {
+        DocStructType docStructType = prefs.getDocStrctTypeByName(type);
+        return docStructType != null && docStructType.isAnchor();
     }
 
     /**
+     * @param configuration cached plugin configuration
      * @return SubnodeConfiguration object according to the project's name
      */
-    private HierarchicalConfiguration getConfig() {
+    private HierarchicalConfiguration getConfig(ExportConfiguration configuration) {
         String projectName = this.process.getProjekt().getTitel();
         log.debug("projectName = " + projectName);
-        XMLConfiguration xmlConfig = ConfigPlugins.getPluginConfig(title);
-        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
-        xmlConfig.setReloadingStrategy(new FileChangedReloadingStrategy());
-        HierarchicalConfiguration conf = null;
 
         // order of configuration is:
         // 1.) project name matches
         // 2.) project is *
-        List<HierarchicalConfiguration> confs;
-
-        try {
-            confs = xmlConfig.configurationsAt("//config[./project = '" + projectName + "']");
-            if (confs.isEmpty()) {
-                confs = xmlConfig.configurationsAt("//config[./project = '*']");
-            }
-        } catch (IllegalArgumentException e) {
-            confs = xmlConfig.configurationsAt("//config[./project = '*']");
+        ConfigBlock block = filterConfigurations(configuration.getBlocks(projectName), vp::replace);
+        if (block == null) {
+            return null;
         }
-
-        conf = filterConfigurations(confs);
-
-        return conf;
+        configBlockId = String.valueOf(block.getIndex());
+        return block.getSettings();
     }
 
-    private HierarchicalConfiguration filterConfigurations(List<HierarchicalConfiguration> confs) {
+    /**
+     * 
+     * @param blocks config blocks of the project
+     * @param replacer replaces the Goobi variables in the fields of the conditions
+     * @return the config block whose conditions all apply and that has the most conditions, or null if there is none
+     */
+    ConfigBlock filterConfigurations(List<ConfigBlock> blocks, UnaryOperator<String> replacer) {
         List<PriorityConfiguration> matchingConfigurations = new LinkedList<>();
-        for (HierarchicalConfiguration conf : confs) {
-            int priority = howManyConditionsApply(conf);
+        for (ConfigBlock block : blocks) {
+            int priority = howManyConditionsApply(block, replacer);
             if (priority >= 0) {
-                matchingConfigurations.add(new PriorityConfiguration(conf, priority));
+                matchingConfigurations.add(new PriorityConfiguration(block, priority));
             }
         }
         int maxPriority = matchingConfigurations.stream()
                 .mapToInt(c -> c.priority)
                 .max()
                 .orElse(-1);
-        List<HierarchicalConfiguration> highestPriorityConfigurations =
+        List<ConfigBlock> highestPriorityConfigurations =
                 matchingConfigurations.stream()
                         .filter(c -> c.priority == maxPriority)
                         .map(c -> c.configuration)
@@ -352,45 +903,59 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
     /**
      * Check if all conditions of the config section apply and if they do, return the number of conditions.
      *
-     * @param conf Config section to check
+     * @param block Config section to check
+     * @param replacer replaces the Goobi variables in the fields of the conditions
      * @return Number of conditions if all conditions apply or -1 otherwise. 0 in case of no specified conditions.
      */
-    private int howManyConditionsApply(HierarchicalConfiguration conf) {
-        List<HierarchicalConfiguration> conditions = conf.configurationsAt("/condition");
-        for (HierarchicalConfiguration condition : conditions) {
-            if (!doesConditionMatch(condition)) {
+    private int howManyConditionsApply(ConfigBlock block, UnaryOperator<String> replacer) {
+        List<Condition> conditions = block.getConditions();
+        for (Condition condition : conditions) {
+            if (!doesConditionMatch(condition, replacer)) {
                 return -1;
             }
         }
         return conditions.size();
     }
 
-    private boolean doesConditionMatch(HierarchicalConfiguration condition) {
-        return determineConditionMatcher(condition);
+    private boolean doesConditionMatch(Condition condition, UnaryOperator<String> replacer) {
+        return determineConditionMatcher(condition, replacer);
     }
 
-    private boolean determineConditionMatcher(HierarchicalConfiguration condition) {
-        String conditionType = condition.getString("type");
+    private boolean determineConditionMatcher(Condition condition, UnaryOperator<String> replacer) {
+        String conditionType = condition.getType();
         if ("variablematcher".equalsIgnoreCase(conditionType)) {
-            return variableRegexMatcher(condition);
+            return variableRegexMatcher(condition, replacer);
         } else {
             logBoth(process.getId(), LogType.ERROR, "Cannot check configuration condition for unknown type \"" + conditionType + "\"!");
             return false;
         }
     }
 
-    private boolean variableRegexMatcher(HierarchicalConfiguration condition) {
-        String field = vp.replace(condition.getString("field"));
-        String regex = condition.getString("matches");
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(field);
+    private boolean variableRegexMatcher(Condition condition, UnaryOperator<String> replacer) {
+        if (condition.getPattern() == null || condition.getField() == null) {
+            return false;
+        }
+        String field = replacer.apply(condition.getField());
+        Matcher matcher = condition.getPattern().matcher(field);
         return matcher.matches();
     }
 
+    /**
+     * Folder of the process that is exported into a subfolder of the target folder in addition to the master images.
+     */
+    @Data
+    @AllArgsConstructor
+    static class AdditionalFolder {
+        /** absolute path to the source folder */
+        private Path source;
+        /** name of the subfolder inside the target folder */
+        private String target;
+    }
+
     @Data
     @AllArgsConstructor
     class PriorityConfiguration implements Comparable<PriorityConfiguration> {
-        private HierarchicalConfiguration configuration;
+        private ConfigBlock configuration;
         private int priority;
 
         @Override
@@ -405,7 +970,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @param path absolute path of the target folder
      * @return true if the folder already exists or is successfully created, false if failure happened.
      */
-    private boolean createFolder(boolean useSftp, Path path) {
+    boolean createFolder(boolean useSftp, Path path) {
         if (path == null) {
             logBoth(process.getId(), LogType.ERROR, "The path provided is null!");
             return false;
@@ -444,46 +1009,110 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
     }
 
     /**
+     * Creates the remote folder including its missing parents. Folders that are known to exist on the current session are not looked up again,
+     * so that a repeated target needs a single round trip.
      * 
      * @param path absolute path of the target folder
      * @return true if the folder already exists or is successfully created, false if failure happened.
      * @throws SftpException
      */
     private boolean createFolderSftp(Path path) throws SftpException {
-        sftpChannel.cd("/");
-        log.debug("pwd = " + sftpChannel.pwd());
-
-        boolean directoryCreated = false;
-        String pathString = path.toString();
-        String[] folders = pathString.split("/");
-        for (String folder : folders) {
-            if (".".equals(folder) || "..".equals(folder)) {
-                sftpChannel.cd(folder);
-                continue;
+        Set<String> knownDirectories = RemoteDirectoryCache.get(jschSession);
+        // relative paths are relative to the remote root folder
+        Path target = Paths.get("/").resolve(path).normalize();
+        String targetString = target.toString();
+
+        // 1. the folder was seen before, just make sure it was not removed meanwhile
+        if (knownDirectories.contains(targetString)) {
+            if (isDirectorySftp(targetString)) {
+                log.debug("Directory already exisits remotely: " + targetString);
+                return true;
             }
-            if (folder.length() > 0 && !folder.contains(".")) { // avoid creating hidden folders
-                // this is a valid folder
-                try {
-                    sftpChannel.cd(folder);
-                    log.debug("pwd = " + sftpChannel.pwd());
-                } catch (SftpException e) {
-                    // no such folder yet, hence try to create it first
-                    sftpChannel.mkdir(folder);
-                    log.debug("folder created: " + folder);
-                    sftpChannel.cd(folder);
-                    log.debug("pwd = " + sftpChannel.pwd());
-                    directoryCreated = true;
-                }
+            knownDirectories.remove(targetString);
+        }
+
+        // 2. the parent folder is known, so most likely only the folder itself is missing
+        Path parent = target.getParent();
+        if (parent != null && !isHidden(target) && knownDirectories.contains(parent.toString()) && makeDirectorySftp(target, knownDirectories)) {
+            return true;
+        }
+
+        // 3. look for the deepest existing folder, then create the missing ones below it
+        Deque<Path> missing = new ArrayDeque<>();
+        for (Path current = target; current != null && current.getFileName() != null; current = current.getParent()) {
+            String currentString = current.toString();
+            if (knownDirectories.contains(currentString) || isDirectorySftp(currentString)) {
+                knownDirectories.add(currentString);
+                break;
             }
+            missing.push(current);
         }
-        // check if the directory is successfully created
-        if (sftpChannel.ls(pathString).size() >= 2) { // because of the existence of `.` and `..` in empty folders
-            String temp = directoryCreated ? "Directory created remotely: " : "Directory already exisits remotely: ";
-            log.debug(temp + path.toString());
+        if (missing.isEmpty()) {
+            log.debug("Directory already exisits remotely: " + targetString);
             return true;
         }
+        for (Path folder : missing) {
+            if (isHidden(folder)) {
+                // avoid creating hidden folders, checked before any of the missing folders is created
+                log.debug("Hidden folders will not be created: " + folder.toString());
+                return false;
+            }
+        }
+        for (Path folder : missing) {
+            if (!makeDirectorySftp(folder, knownDirectories)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return false;
+    /**
+     * 
+     * @param folder absolute path of the remote folder that should be created
+     * @param knownDirectories remote folders known to exist, the folder is added if it exists afterwards
+     * @return true if the folder was created or exists already, false otherwise
+     * @throws SftpException
+     */
+    private boolean makeDirectorySftp(Path folder, Set<String> knownDirectories) throws SftpException {
+        String folderString = folder.toString();
+        try {
+            sftpChannel.mkdir(folderString);
+            log.debug("Directory created remotely: " + folderString);
+        } catch (SftpException e) {
+            // the folder may exist already or may have been created concurrently
+            if (!isDirectorySftp(folderString)) {
+                log.debug("Failed to create directory remotely: " + folderString + ", " + e.getMessage());
+                return false;
+            }
+        }
+        knownDirectories.add(folderString);
+        return true;
+    }
+
+    /**
+     * 
+     * @param folder absolute path of a folder
+     * @return true if the name of the folder starts with a dot, like the staging folders, false otherwise
+     */
+    private static boolean isHidden(Path folder) {
+        return folder.getFileName() != null && folder.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * 
+     * @param path absolute path on the remote host
+     * @return true if the path exists and is a folder, false otherwise
+     * @throws SftpException
+     */
+    private boolean isDirectorySftp(String path) throws SftpException {
+        try {
+            return sftpChannel.stat(path).isDir();
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return false;
+            }
+            throw e;
+        }
     }
 
     /**
@@ -492,7 +1121,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @param fieldName value of which we want inside "logical"
      * @return the value of "fieldName" inside "logical" as String
      */
-    private String findMetadata(DocStruct logical, String fieldName) {
+    static String findMetadata(DocStruct logical, String fieldName) {
         String fieldValue = "";
         for (Metadata md : logical.getAllMetadata()) {
             if (md.getType().getName().equals(fieldName)) {
@@ -512,15 +1141,47 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @param useSftp true if use SFTP, false otherwise
      * @return true if the copy is successfully performed, false otherwise
      */
-    private boolean tryCopy(Process process, Path fromPath, Path toPath, Path ctlPath, boolean useSftp) {
+    boolean tryCopy(Process process, Path fromPath, Path toPath, Path ctlPath, boolean useSftp) {
         Path ctl = ctlPath == null ? toPath : ctlPath;
+        checksumCache = useChecksumCache ? ChecksumCache.load(processFolder) : ChecksumCache.inMemory();
+        journal = openJournal(process, useStaging ? stagingPath : toPath);
         try {
             return useSftp ? tryCopySftp(process, fromPath, toPath, ctl) : tryCopyLocal(process, fromPath, toPath, ctl);
         } finally {
-            if (sftpChannel != null) {
-                sftpChannel.exit();
+            try {
+                checksumCache.save();
+            } catch (IOException e) {
+                log.warn("Failed to save the checksum cache of process " + process.getId() + ".", e);
             }
-            log.debug("=============================== Stopping VLM Export ===============================");
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Failed to close the export journal of process " + process.getId() + ".", e);
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param process
+     * @param copyPath absolute path to the folder the files are copied into
+     * @return ExportJournal of the export, which is disabled if it is not configured or cannot be written
+     */
+    private ExportJournal openJournal(Process process, Path copyPath) {
+        if (!useJournal || archiveFormat != ArchiveWriter.Format.NONE) {
+            // an archive is a single file, there is nothing to resume
+            return ExportJournal.disabled();
+        }
+        try {
+            // the files of an interrupted export are lost if a new staging folder had to be created
+            ExportJournal exportJournal = ExportJournal.open(processFolder, getTargetKey(), copyPath, !useStaging || stagingReused);
+            if (exportJournal.isResumed()) {
+                logBoth(process.getId(), LogType.INFO, "Continuing an interrupted export, files that were transferred already are skipped.");
+            }
+            return exportJournal;
+        } catch (IOException e) {
+            logBoth(process.getId(), LogType.WARN, "Failed to open the export journal, the export will not be resumable: " + e.getMessage());
+            return ExportJournal.disabled();
         }
     }
 
@@ -532,13 +1193,36 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @return true if the copy is successfully performed, false otherwise
      */
     private boolean tryCopyLocal(Process process, Path fromPath, Path toPath, Path ctlPath) {
-        StorageProviderInterface provider = StorageProvider.getInstance();
-        if (!provider.list(toPath.toString()).isEmpty()) {
-            provider.deleteInDir(toPath);
-        }
+        ExportManifest manifest = new ExportManifest();
+        // with staging, everything is copied into the staging folder first
+        Path copyPath = useStaging ? stagingPath : toPath;
+        Map<String, ExportManifest> folderManifests = new LinkedHashMap<>();
         try {
-            copyImagesLocal(fromPath, toPath);
-            createCTLLocal(ctlPath);
+            // the master images are prepared first, since replacing them may remove the subfolders of the target folder
+            List<Callable<Void>> copies = new ArrayList<>();
+            copies.add(prepareCopyLocal(fromPath, copyPath, manifest));
+            for (AdditionalFolder folder : additionalFolders) {
+                ExportManifest folderManifest = new ExportManifest();
+                folderManifests.put(folder.getTarget(), folderManifest);
+                copies.add(prepareCopyLocal(folder.getSource(), copyPath.resolve(folder.getTarget()), folderManifest));
+            }
+            journal.prepared();
+            try {
+                copyFolders(copies);
+            } catch (IOException e) {
+                // the copies of all folders are stopped by now, so none of them writes into the folder while it is cleaned up
+                deleteFailedCopyLocal(copyPath);
+                throw e;
+            }
+            folderManifests.forEach((target, folderManifest) -> manifest.add(folderManifest, target + "/"));
+            if (useStaging) {
+                publishLocal(copyPath, toPath);
+            }
+            // an interrupted export may have created the .ctl file already
+            if (!journal.isResumed() || !Files.exists(getCtlFile(ctlPath))) {
+                createCTLLocal(ctlPath);
+            }
+            journal.completed();
 
         } catch (IOException e) {
             logBoth(process.getId(), LogType.ERROR,
@@ -546,6 +1230,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
             logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
             return false;
         }
+        logManifest(manifest);
         logBoth(process.getId(), LogType.INFO, "Images from '" + fromPath.toString() + "' are successfully copied to '" + toPath.toString() + "'.");
         logBoth(process.getId(), LogType.INFO, COMPLETION_MESSAGE + process.getId());
         return true;
@@ -560,23 +1245,40 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @throws IOException
      */
     private boolean tryCopySftp(Process process, Path fromPath, Path toPath, Path ctlPath) {
+        if (archiveFormat != ArchiveWriter.Format.NONE) {
+            return tryArchiveSftp(process, fromPath, toPath, ctlPath);
+        }
+        ExportManifest manifest = new ExportManifest();
+        // with staging, everything is uploaded into the staging folder first
+        Path copyPath = useStaging ? stagingPath : toPath;
+        // old content is deleted in the background while the new files are uploaded
+        ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
+        List<Future<?>> cleanups = new ArrayList<>();
+        Map<String, ExportManifest> folderManifests = new LinkedHashMap<>();
         try {
-            // check if the targeted directory is empty:
-            if (sftpChannel.ls(toPath.toString()).size() > 2) { // because of the existence of `.` and `..` in empty folders
-                // delete old content, if this is the case
-                String currentFolder = sftpChannel.pwd();
-                sftpChannel.cd(toPath.toString()); // switch into the directory
-                List<LsEntry> existingData = sftpChannel.ls("."); // list content
-                for (LsEntry entry : existingData) {
-                    if (!".".equals(entry.getFilename()) && !"..".equals(entry.getFilename())) {
-                        sftpChannel.rm(entry.getFilename()); // remove files
-                    }
+            // the master images are prepared first, since replacing them moves the subfolders of the target folder aside
+            List<Callable<Void>> copies = new ArrayList<>();
+            copies.add(prepareCopySftp(fromPath, copyPath, manifest, sftpChannel, cleanupExecutor, cleanups));
+            for (AdditionalFolder folder : additionalFolders) {
+                ExportManifest folderManifest = new ExportManifest();
+                folderManifests.put(folder.getTarget(), folderManifest);
+                // the main channel is busy with the master images
+                copies.add(prepareCopySftp(folder.getSource(), copyPath.resolve(folder.getTarget()), folderManifest, null, cleanupExecutor, cleanups));
+            }
+            journal.prepared();
+            copyFolders(copies);
+            folderManifests.forEach((target, folderManifest) -> manifest.add(folderManifest, target + "/"));
+            if (useStaging) {
+                Path replacedPath = publishSftp(copyPath, toPath);
+                if (replacedPath != null) {
+                    cleanups.add(cleanupExecutor.submit(() -> deleteFolderSftpParallel(replacedPath)));
                 }
-                sftpChannel.cd(currentFolder); // switch back to the actual folder
             }
-            // if the folder is empty, great!
-            copyImagesSftp(fromPath, toPath);
-            createCTLSftp(ctlPath);
+            // an interrupted export may have created the .ctl file already
+            if (!journal.isResumed() || !existsSftp(getCtlFile(ctlPath))) {
+                createCTLSftp(ctlPath);
+            }
+            journal.completed();
 
         } catch (SftpException | IOException e) {
             logBoth(process.getId(), LogType.ERROR,
@@ -584,7 +1286,11 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
                             + "'.");
             logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
             return false;
+        } finally {
+            awaitCleanups(cleanups);
+            cleanupExecutor.shutdown();
         }
+        logManifest(manifest);
         logBoth(process.getId(), LogType.INFO, "Images from '" + fromPath.toString() + "' are successfully copied to '" + username + "@" + hostname
                 + ":" + toPath.toString() + "'.");
         logBoth(process.getId(), LogType.INFO, COMPLETION_MESSAGE + process.getId());
@@ -592,62 +1298,1121 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
     }
 
     /**
+     * Streams the source folder and the additional folders as a single archive into a remote file next to the target folder, e.g. 'id.tar'
+     * instead of the folder 'id'. The archive is uploaded under a hidden temporary name and renamed into place once it is complete, then the .ctl
+     * file is created.
+     * 
+     * @param process
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the remote target folder, which is replaced by the archive
+     * @return true if the upload is successfully performed, false otherwise
+     */
+    private boolean tryArchiveSftp(Process process, Path fromPath, Path toPath, Path ctlPath) {
+        Path archivePath = toPath.resolveSibling(toPath.getFileName() + archiveFormat.getExtension());
+        Path partPath = toPath.resolveSibling("." + archivePath.getFileName() + STAGING_SUFFIX);
+        try {
+            long size;
+            SftpProgressMonitor monitor = rateLimiter == null ? null : rateLimiter.asProgressMonitor(transferPriority);
+            try (OutputStream out = new BufferedOutputStream(sftpChannel.put(partPath.toString(), monitor, ChannelSftp.OVERWRITE),
+                    ARCHIVE_BUFFER_SIZE)) {
+                ArchiveWriter archive = ArchiveWriter.create(archiveFormat, out);
+                addFolderToArchive(archive, fromPath, "");
+                for (AdditionalFolder folder : additionalFolders) {
+                    addFolderToArchive(archive, folder.getSource(), folder.getTarget() + "/");
+                }
+                archive.finish();
+                size = archive.getBytesWritten();
+            }
+            long remoteSize = sftpChannel.stat(partPath.toString()).getSize();
+            if (remoteSize != size) {
+                throw new IOException("The uploaded archive has " + remoteSize + " instead of " + size + " bytes.");
+            }
+            // SFTP does not allow to rename onto an existing file
+            if (existsSftp(archivePath)) {
+                sftpChannel.rm(archivePath.toString());
+            }
+            sftpChannel.rename(partPath.toString(), archivePath.toString());
+            log.debug("Uploaded the archive '" + archivePath + "' with " + size + " bytes.");
+            createCTLSftp(ctlPath);
+
+        } catch (SftpException | IOException e) {
+            logBoth(process.getId(), LogType.ERROR, "Errors happened trying to upload '" + fromPath.toString() + "' as archive to '" + username + "@"
+                    + hostname + ":" + archivePath.toString() + "': " + e.getMessage());
+            logBoth(process.getId(), LogType.ERROR, ABORTION_MESSAGE + process.getId());
+            return false;
+        }
+        logBoth(process.getId(), LogType.INFO, "Images from '" + fromPath.toString() + "' are successfully uploaded as archive to '" + username + "@"
+                + hostname + ":" + archivePath.toString() + "'.");
+        logBoth(process.getId(), LogType.INFO, COMPLETION_MESSAGE + process.getId());
+        return true;
+    }
+
+    /**
+     * 
+     * @param archive ArchiveWriter the files are added to
+     * @param folder absolute path to the source folder
+     * @param prefix path of the folder inside the archive, either empty or ending with /
+     * @throws IOException
+     */
+    private void addFolderToArchive(ArchiveWriter archive, Path folder, String prefix) throws IOException {
+        try (DirectoryStream<Path> sourceFiles = SourceFolder.open(folder)) {
+            for (String file : SourceFolder.names(sourceFiles)) {
+                Path srcPath = folder.resolve(file);
+                archive.addFile(prefix + file, srcPath);
+                metrics.addFile(Files.size(srcPath));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Prepares a target folder for the copy: a missing folder is created, a delta export determines the files to copy, otherwise the old content
+     * of the folder is deleted.
+     * 
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the target folder
+     * @param manifest ExportManifest to record skipped, copied and removed files
+     * @return the copy of the folder, to be run by {@link #copyFolders(List)}
+     * @throws IOException
+     */
+    private Callable<Void> prepareCopyLocal(Path fromPath, Path toPath, ExportManifest manifest) throws IOException {
+        if (!Files.isDirectory(toPath)) {
+            Files.createDirectory(toPath);
+        } else if (deltaExport || stagingReused) {
+            // the files already in a reused staging folder were completely copied, so they can be treated like a delta export
+            List<String> files = planDeltaLocal(fromPath, toPath, manifest);
+            return () -> {
+                copyImagesLocal(fromPath, toPath, files, manifest);
+                return null;
+            };
+        } else if (!journal.isResumed() && !SourceFolder.isEmpty(toPath)) {
+            // an interrupted export keeps its files, they are skipped by the copy
+            StorageProvider.getInstance().deleteInDir(toPath);
+        }
+        return () -> {
+            // the copy starts while the source folder is still being read
+            try (DirectoryStream<Path> sourceFiles = SourceFolder.open(fromPath)) {
+                copyImagesLocal(fromPath, toPath, SourceFolder.names(sourceFiles), manifest);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Prepares a remote target folder for the upload: a missing folder is created, a delta export determines the files to upload, otherwise the
+     * old content of the folder is moved aside and deleted in the background.
+     * 
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the remote target folder
+     * @param manifest ExportManifest to record skipped, copied and removed files
+     * @param channel ChannelSftp used by the first upload worker, or null if all channels should be opened for the upload
+     * @param cleanupExecutor ExecutorService running the deletion of old content
+     * @param cleanups list the Future of a started deletion is added to
+     * @return the upload of the folder, to be run by {@link #copyFolders(List)}
+     * @throws SftpException
+     * @throws IOException
+     */
+    private Callable<Void> prepareCopySftp(Path fromPath, Path toPath, ExportManifest manifest, ChannelSftp channel, ExecutorService cleanupExecutor,
+            List<Future<?>> cleanups) throws SftpException, IOException {
+        if (!isDirectorySftp(toPath.toString())) {
+            sftpChannel.mkdir(toPath.toString());
+        } else if (deltaExport || stagingReused) {
+            List<String> files = planDeltaSftp(fromPath, toPath, manifest);
+            return () -> {
+                copyImagesSftp(channel, fromPath, toPath, files, manifest);
+                return null;
+            };
+        } else if (!journal.isResumed() && sftpChannel.ls(toPath.toString()).size() > 2) { // `.` and `..` exist in empty folders too
+            // move old content aside, it is deleted while the new files are uploaded
+            Path replacedPath = moveAsideSftp(toPath);
+            sftpChannel.mkdir(toPath.toString());
+            cleanups.add(cleanupExecutor.submit(() -> deleteFolderSftpParallel(replacedPath)));
+        }
+        return () -> {
+            // the upload starts while the source folder is still being read
+            try (DirectoryStream<Path> sourceFiles = SourceFolder.open(fromPath)) {
+                copyImagesSftp(channel, fromPath, toPath, SourceFolder.names(sourceFiles), manifest);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Runs the copies of the master images and the additional folders concurrently, so that the export takes about as long as its largest
+     * folder. The first failing copy aborts the others.
+     * 
+     * @param copies copies prepared by prepareCopyLocal or prepareCopySftp
+     * @throws IOException
+     */
+    private void copyFolders(List<Callable<Void>> copies) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(copies.size());
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            copies.forEach(completionService::submit);
+            for (int i = 0; i < copies.size(); i++) {
+                completionService.take().get();
+            }
+        } catch (ExecutionException e) {
+            stopWorkers(executor);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Copy was interrupted.", e);
+        } finally {
+            stopWorkers(executor);
+        }
+    }
+
+    /**
+     * Prepares the hidden staging folder next to the target folder. A staging folder left behind by a failed export is reused, only files missing
+     * in it will be copied again. For delta exports
+     * the files of the current target folder are hard-linked into the staging folder, or copied if links are not supported, so that unchanged
+     * files need not be copied again while the target folder stays in place until the staging folder is published.
+     * 
+     * @return true if the staging folder is ready, false otherwise
+     */
+    boolean prepareStaging() {
+        stagingPath = targetPath.resolveSibling("." + targetPath.getFileName() + STAGING_SUFFIX);
+        log.debug("staging path = " + stagingPath.toString());
+        try {
+            if (useSftp) {
+                prepareStagingSftp();
+            } else {
+                prepareStagingLocal();
+            }
+            return true;
+        } catch (IOException | SftpException e) {
+            logBoth(process.getId(), LogType.ERROR, "Failed to prepare the staging directory '" + stagingPath.toString() + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void prepareStagingLocal() throws IOException {
+        if (Files.isDirectory(stagingPath)) {
+            log.debug("Reusing the staging directory of a previous export.");
+            stagingReused = true;
+        } else if (deltaExport && Files.isDirectory(targetPath)) {
+            Files.createDirectory(stagingPath);
+            linkFolderLocal(targetPath, stagingPath);
+            log.debug("Linked the target directory into the staging directory.");
+        } else {
+            Files.createDirectory(stagingPath);
+        }
+    }
+
+    /**
+     * Hard-links the files of a target folder and its subfolders into an empty folder. Files are copied instead if the file system does not
+     * support hard links.
+     * 
+     * @param fromPath absolute path to the current target folder
+     * @param toPath absolute path to the empty staging folder
+     * @throws IOException
+     */
+    private void linkFolderLocal(Path fromPath, Path toPath) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fromPath, path -> !path.getFileName().toString().startsWith("."))) {
+            for (Path path : stream) {
+                Path linkPath = toPath.resolve(path.getFileName().toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectory(linkPath);
+                    linkFolderLocal(path, linkPath);
+                } else {
+                    try {
+                        Files.createLink(linkPath, path);
+                    } catch (UnsupportedOperationException | IOException e) {
+                        Files.copy(path, linkPath, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void prepareStagingSftp() throws SftpException {
+        if (existsSftp(stagingPath)) {
+            log.debug("Reusing the staging directory of a previous export.");
+            stagingReused = true;
+        } else if (deltaExport && existsSftp(targetPath)) {
+            sftpChannel.mkdir(stagingPath.toString());
+            try {
+                linkFolderSftp(targetPath, stagingPath);
+                log.debug("Linked the target directory into the staging directory.");
+            } catch (SftpException e) {
+                if (e.id != ChannelSftp.SSH_FX_OP_UNSUPPORTED) {
+                    throw e;
+                }
+                // the files that were not linked are uploaded like changed ones
+                log.debug("The remote host does not support hard links, all files will be uploaded into the staging directory.");
+            }
+        } else {
+            // createFolderSftp would skip the hidden staging folder
+            sftpChannel.mkdir(stagingPath.toString());
+        }
+    }
+
+    /**
+     * Hard-links the files of a remote target folder and its subfolders into an empty remote folder.
+     * 
+     * @param fromPath absolute path to the current remote target folder
+     * @param toPath absolute path to the empty remote staging folder
+     * @throws SftpException with id SSH_FX_OP_UNSUPPORTED if the remote host does not support hard links
+     */
+    private void linkFolderSftp(Path fromPath, Path toPath) throws SftpException {
+        for (LsEntry entry : sftpChannel.ls(fromPath.toString())) {
+            String name = entry.getFilename();
+            // skips `.` and `..` as well as hidden files
+            if (name.startsWith(".")) {
+                continue;
+            }
+            if (entry.getAttrs().isDir()) {
+                sftpChannel.mkdir(toPath.resolve(name).toString());
+                linkFolderSftp(fromPath.resolve(name), toPath.resolve(name));
+            } else if (entry.getAttrs().isReg()) {
+                sftpChannel.hardlink(fromPath.resolve(name).toString(), toPath.resolve(name).toString());
+            }
+        }
+    }
+
+    /**
+     * Renames the completely copied staging folder into place. A previous version of the target folder is renamed aside first and deleted
+     * afterwards, so that the target folder is never seen partially filled.
+     * 
+     * @param stagingPath absolute path to the staging folder
+     * @param toPath absolute path to the target folder
+     * @throws IOException
+     */
+    private void publishLocal(Path stagingPath, Path toPath) throws IOException {
+        StorageProviderInterface provider = StorageProvider.getInstance();
+        Path replacedPath = toPath.resolveSibling("." + toPath.getFileName() + REPLACED_SUFFIX);
+        if (Files.exists(replacedPath)) {
+            provider.deleteInDir(replacedPath);
+            provider.deleteDir(replacedPath);
+        }
+        if (Files.exists(toPath)) {
+            Files.move(toPath, replacedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(stagingPath, toPath, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Renamed the staging directory to '" + toPath.toString() + "'.");
+        if (Files.exists(replacedPath)) {
+            provider.deleteInDir(replacedPath);
+            provider.deleteDir(replacedPath);
+        }
+    }
+
+    /**
+     * Renames the completely uploaded staging folder into place. A previous version of the target folder is renamed aside first, so that the
+     * target folder is never seen partially filled. Deleting the previous version is left to the caller.
+     * 
+     * @param stagingPath absolute path to the remote staging folder
+     * @param toPath absolute path to the remote target folder
+     * @return absolute path the previous version of the target folder was moved to, or null if there was none
+     * @throws SftpException
+     */
+    private Path publishSftp(Path stagingPath, Path toPath) throws SftpException {
+        // SFTP does not allow to rename onto an existing folder
+        Path replacedPath = existsSftp(toPath) ? moveAsideSftp(toPath) : null;
+        sftpChannel.rename(stagingPath.toString(), toPath.toString());
+        log.debug("Renamed the remote staging directory to '" + toPath.toString() + "'.");
+        return replacedPath;
+    }
+
+    /**
+     * Renames a remote folder to a hidden sibling folder, so that it can be deleted without blocking the upload. A leftover of an export whose
+     * deletion failed is deleted first.
+     * 
+     * @param folder absolute path to the remote folder
+     * @return absolute path the folder was moved to
+     * @throws SftpException
+     */
+    private Path moveAsideSftp(Path folder) throws SftpException {
+        Path replacedPath = folder.resolveSibling("." + folder.getFileName() + REPLACED_SUFFIX);
+        if (existsSftp(replacedPath)) {
+            deleteFolderSftp(sftpChannel, replacedPath);
+        }
+        sftpChannel.rename(folder.toString(), replacedPath.toString());
+        log.debug("Moved the remote directory '" + folder.toString() + "' aside to '" + replacedPath.getFileName() + "'.");
+        return replacedPath;
+    }
+
+    /**
+     * 
+     * @param path absolute path to the remote file or folder
+     * @return true if the path exists remotely, false otherwise
+     * @throws SftpException
+     */
+    private boolean existsSftp(Path path) throws SftpException {
+        try {
+            sftpChannel.stat(path.toString());
+            return true;
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes a remote folder including its contents.
+     * 
+     * @param channel ChannelSftp used for the deletion
+     * @param path absolute path to the remote folder
+     * @throws SftpException
+     */
+    private void deleteFolderSftp(ChannelSftp channel, Path path) throws SftpException {
+        List<LsEntry> entries = channel.ls(path.toString());
+        for (LsEntry entry : entries) {
+            String name = entry.getFilename();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+            if (entry.getAttrs().isDir()) {
+                deleteFolderSftp(channel, path.resolve(name));
+            } else {
+                channel.rm(path.resolve(name).toString());
+            }
+        }
+        channel.rmdir(path.toString());
+    }
+
+    /**
+     * Deletes a remote folder including its contents. The files are removed over `sftpChannels` channels of its own, so that the deletion can run
+     * while the upload is using the other channels of the session.
+     * 
+     * @param path absolute path to the remote folder
+     * @return always null, so that it can be submitted as a Callable
+     * @throws JSchException
+     * @throws SftpException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    private Void deleteFolderSftpParallel(Path path) throws JSchException, SftpException, InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        int channelCount = Math.max(1, sftpChannels);
+        List<ChannelSftp> channels = new ArrayList<>(channelCount);
+        ExecutorService executor = Executors.newFixedThreadPool(channelCount);
+        try {
+            ChannelSftp channel = openSftpChannel();
+            channels.add(channel);
+            Queue<String> files = new ConcurrentLinkedQueue<>();
+            for (LsEntry entry : channel.ls(path.toString())) {
+                String name = entry.getFilename();
+                if (".".equals(name) || "..".equals(name)) {
+                    continue;
+                }
+                if (entry.getAttrs().isDir()) {
+                    deleteFolderSftp(channel, path.resolve(name));
+                } else {
+                    files.add(path.resolve(name).toString());
+                }
+            }
+            int fileCount = files.size();
+            for (int i = 1; i < Math.min(channelCount, fileCount); i++) {
+                channels.add(openSftpChannel());
+            }
+            List<Future<?>> removals = new ArrayList<>(channels.size());
+            for (ChannelSftp removingChannel : channels) {
+                removals.add(executor.submit(() -> {
+                    String file;
+                    while ((file = files.poll()) != null) {
+                        removingChannel.rm(file);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> removal : removals) {
+                removal.get();
+            }
+            channel.rmdir(path.toString());
+            log.debug("Deleted the remote directory '" + path.toString() + "' with " + fileCount + " file(s) using " + channels.size()
+                    + " channel(s) in " + (System.currentTimeMillis() - start) + " ms.");
+        } finally {
+            stopWorkers(executor);
+            channels.forEach(ChannelSftp::disconnect);
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the background deletions of replaced remote folders. A failed deletion does not fail the export, the folder is deleted again by
+     * the next export of the same target.
+     * 
+     * @param cleanups Futures of the deletions
+     */
+    private void awaitCleanups(List<Future<?>> cleanups) {
+        for (Future<?> cleanup : cleanups) {
+            try {
+                cleanup.get();
+            } catch (ExecutionException e) {
+                logBoth(process.getId(), LogType.WARN, "Failed to delete the replaced files on the remote host: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compares the source folder with the local target folder. Unchanged files are recorded as skipped, files that only exist in the target folder
+     * are removed.
      * 
      * @param fromPath absolute path to the source folder
      * @param toPath absolute path to the target folder
+     * @param manifest ExportManifest to record skipped and removed files
+     * @return names of the files that need to be copied
      * @throws IOException
      */
-    private void copyImagesLocal(Path fromPath, Path toPath) throws IOException {
-        log.debug("Copy images from '" + fromPath.toString() + "' to '" + toPath.toString() + "'.");
+    private List<String> planDeltaLocal(Path fromPath, Path toPath, ExportManifest manifest) throws IOException {
         StorageProviderInterface provider = StorageProvider.getInstance();
-        List<String> files = provider.list(fromPath.toString());
+        Set<String> sourceFiles = new HashSet<>();
+        List<String> filesToCopy = new LinkedList<>();
+        try (DirectoryStream<Path> stream = SourceFolder.open(fromPath)) {
+            for (String file : SourceFolder.names(stream)) {
+                sourceFiles.add(file);
+                Path srcPath = fromPath.resolve(file);
+                Path destPath = toPath.resolve(file);
+                if (isUnchangedLocal(srcPath, destPath)) {
+                    manifest.addSkipped(file);
+                } else {
+                    filesToCopy.add(file);
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        List<Path> removedFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = SourceFolder.open(toPath)) {
+            for (Path destPath : stream) {
+                if (!sourceFiles.contains(destPath.getFileName().toString())) {
+                    removedFiles.add(destPath);
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        // the files are not deleted while the folder is being read
+        for (Path destPath : removedFiles) {
+            provider.deleteFile(destPath);
+            manifest.addRemoved(destPath.getFileName().toString());
+        }
+        return filesToCopy;
+    }
+
+    /**
+     * 
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the target file
+     * @return true if the target file has the same size and modification time as the source file and, if configured, the same checksum
+     * @throws IOException
+     */
+    private boolean isUnchangedLocal(Path srcPath, Path destPath) throws IOException {
+        if (!Files.isRegularFile(destPath) || Files.size(srcPath) != Files.size(destPath)
+                || !Files.getLastModifiedTime(srcPath).equals(Files.getLastModifiedTime(destPath))) {
+            return false;
+        }
+        return !deltaChecksum || checksumCache.getOrCompute(srcPath).equals(LocalFileCopier.checksum(destPath));
+    }
+
+    /**
+     * Compares the source folder with the remote target folder. Unchanged files are recorded as skipped, files that only exist in the target
+     * folder are removed.
+     * 
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the target folder
+     * @param manifest ExportManifest to record skipped and removed files
+     * @return names of the files that need to be copied
+     * @throws IOException
+     * @throws SftpException
+     */
+    private List<String> planDeltaSftp(Path fromPath, Path toPath, ExportManifest manifest) throws IOException, SftpException {
+        if (deltaChecksum) {
+            log.debug("Checksums are not compared for remote targets, only size and modification time are used.");
+        }
+        Map<String, SftpATTRS> remoteFiles = new HashMap<>();
+        List<LsEntry> entries = sftpChannel.ls(toPath.toString());
+        for (LsEntry entry : entries) {
+            if (!entry.getAttrs().isDir()) {
+                remoteFiles.put(entry.getFilename(), entry.getAttrs());
+            }
+        }
+
+        List<String> filesToCopy = new LinkedList<>();
+        try (DirectoryStream<Path> stream = SourceFolder.open(fromPath)) {
+            for (String file : SourceFolder.names(stream)) {
+                Path srcPath = fromPath.resolve(file);
+                SftpATTRS attrs = remoteFiles.remove(file);
+                if (attrs != null && attrs.getSize() == Files.size(srcPath)
+                        && attrs.getMTime() == Files.getLastModifiedTime(srcPath).to(TimeUnit.SECONDS)) {
+                    manifest.addSkipped(file);
+                } else {
+                    if (attrs != null && useStaging) {
+                        // the file may be a hard link into the published folder, an upload would overwrite the published file
+                        sftpChannel.rm(toPath.resolve(file).toString());
+                    }
+                    filesToCopy.add(file);
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        // everything left in remoteFiles does not exist in the source folder anymore
+        for (String file : remoteFiles.keySet()) {
+            sftpChannel.rm(toPath.resolve(file).toString());
+            manifest.addRemoved(file);
+        }
+        return filesToCopy;
+    }
+
+    /**
+     * 
+     * @param manifest ExportManifest to be shown to both terminal and journal
+     */
+    private void logManifest(ExportManifest manifest) {
+        log.debug("skipped files: " + manifest.getSkipped());
+        log.debug("copied files: " + manifest.getCopied());
+        log.debug("removed files: " + manifest.getRemoved());
+        logBoth(process.getId(), LogType.INFO, "Export summary: " + manifest.toString() + ".");
+    }
+
+    /**
+     * Copies the given files of the source folder using a pool of at most `threads` workers. The first failing file aborts the whole copy, in which
+     * case the already copied contents of the target folder will be deleted, unless a delta export, staging or a journal is used.
+     * 
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the target folder
+     * @param files names of the files that should be copied, which may still be read from the source folder while the first files are copied
+     * @param manifest ExportManifest to record copied files
+     * @throws IOException
+     */
+    private void copyImagesLocal(Path fromPath, Path toPath, Iterable<String> files, ExportManifest manifest) throws IOException {
+        log.debug("Copy images from '" + fromPath.toString() + "' to '" + toPath.toString() + "' using " + threads + " thread(s).");
+        LocalFileCopier copier = new LocalFileCopier(fsync, localCopyMode, rateLimiter, transferPriority, transferTuning);
+        // the workers are only started once there are files to copy
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        List<String> submitted = new ArrayList<>();
+        int completed = 0;
+        try {
+            for (String file : files) {
+                submitted.add(file);
+                completionService.submit(() -> {
+                    if (journal.isTransferred(fromPath.resolve(file), toPath.resolve(file))) {
+                        manifest.addSkipped(file);
+                        return file;
+                    }
+                    copyImageLocal(copier, fromPath.resolve(file), toPath.resolve(file));
+                    manifest.addCopied(file);
+                    return file;
+                });
+                // collect finished copies while submitting, so that a failure stops reading the source folder
+                for (Future<String> done = completionService.poll(); done != null; done = completionService.poll()) {
+                    log.trace("file copied: " + done.get());
+                    completed++;
+                }
+            }
+            for (; completed < submitted.size(); completed++) {
+                log.trace("file copied: " + completionService.take().get());
+            }
+        } catch (ExecutionException e) {
+            abortCopyLocal(executor, toPath, submitted, manifest);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (DirectoryIteratorException e) {
+            abortCopyLocal(executor, toPath, submitted, manifest);
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Copy was interrupted.", e);
+        } finally {
+            stopWorkers(executor);
+        }
+    }
+
+    /**
+     * Stops the copy of a folder after a failure. If a delta export, staging or a journal is used, the files that were not copied completely are
+     * deleted. Otherwise the whole target folder is deleted by {@link #deleteFailedCopyLocal(Path)} once the copies of all folders are stopped.
+     * 
+     * @param executor ExecutorService of the copy workers
+     * @param toPath absolute path to the target folder
+     * @param submitted names of the files whose copy was started
+     * @param manifest ExportManifest with the copied files
+     * @throws IOException
+     */
+    private void abortCopyLocal(ExecutorService executor, Path toPath, List<String> submitted, ExportManifest manifest) throws IOException {
+        // stop all other workers before the target folder gets cleaned up
+        stopWorkers(executor);
+        if (deltaExport || useStaging || journal.isEnabled()) {
+            // keep the unchanged files, the next delta export, staging attempt or resumed export will copy the missing ones
+            log.debug("Files that were not copied successfully will be deleted.");
+            Set<String> finished = new HashSet<>(manifest.getCopied());
+            finished.addAll(manifest.getSkipped());
+            for (String file : submitted) {
+                if (!finished.contains(file)) {
+                    Files.deleteIfExists(toPath.resolve(file));
+                }
+            }
+        }
+    }
 
-        for (String file : files) {
-            Path srcPath = fromPath.resolve(file);
-            Path destPath = toPath.resolve(file);
-            provider.copyFile(srcPath, destPath);
+    /**
+     * Deletes the already copied contents of a failed export, unless a delta export, staging or a journal is used.
+     * 
+     * @param copyPath absolute path to the folder the files were copied into
+     * @throws IOException
+     */
+    private void deleteFailedCopyLocal(Path copyPath) throws IOException {
+        if (deltaExport || useStaging || journal.isEnabled() || !Files.exists(copyPath)) {
+            return;
+        }
+        log.debug("Already copied contents will be deleted.");
+        StorageProviderInterface provider = StorageProvider.getInstance();
+        provider.deleteInDir(copyPath);
+        provider.deleteDir(copyPath);
+    }
 
-            // get the checksums of the original file and the copy
-            String fromChecksum = DigestUtils.sha256Hex(Files.newInputStream(srcPath));
-            String toChecksum = DigestUtils.sha256Hex(Files.newInputStream(destPath));
+    /**
+     * Copies a single file and verifies the copy by comparing checksums. A hard link shares its data with the source file and is not verified, a
+     * clone made by reflink is only compared by size unless `localCopyMode/@verify` is set. A failing check will be retried once.
+     * 
+     * @param copier LocalFileCopier used for the copy
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the target file
+     * @throws IOException if the file could not be copied or the checksum check failed twice
+     */
+    void copyImageLocal(LocalFileCopier copier, Path srcPath, Path destPath) throws IOException {
+        try {
+            // the checksum of the original file is computed while copying it, the copy needs to be read only once
+            LocalFileCopier.Result copy = copier.copy(srcPath, destPath);
+            String fromChecksum = copy.getChecksum();
+            if (copy.getMode() == LocalFileCopier.Mode.HARDLINK
+                    || copy.getMode() == LocalFileCopier.Mode.REFLINK && !verifyClones && Files.size(destPath) == Files.size(srcPath)) {
+                // a hard link is the original file, and a clone shares its data, so neither of them needs to be read, nor does the original file
+                // unless its checksum is needed for the journal
+                metrics.addFile(Files.size(srcPath));
+                journal.record(srcPath, destPath, getJournalChecksum(srcPath));
+                return;
+            }
+            long start = ExportMetrics.start();
+            if (fromChecksum == null) {
+                // the data was copied without passing through the JVM
+                fromChecksum = checksumCache.getOrCompute(srcPath);
+            }
+            String toChecksum = LocalFileCopier.checksum(destPath);
+            metrics.stopChecksum(start);
 
             // compare these two checksums
             // if they are not equal, then something went wrong during the copy process of this file
             if (!fromChecksum.equals(toChecksum)) {
                 // retry once
-                provider.deleteFile(destPath);
-                provider.copyFile(srcPath, destPath);
-                toChecksum = DigestUtils.sha256Hex(Files.newInputStream(destPath));
-                // if still not equal, delete the already copied contents and throw an IOException
+                metrics.addRetry();
+                String retryChecksum = copier.copy(srcPath, destPath).getChecksum();
+                fromChecksum = retryChecksum == null ? LocalFileCopier.checksum(srcPath) : retryChecksum;
+                toChecksum = LocalFileCopier.checksum(destPath);
+                // if still not equal, throw an IOException
                 if (!fromChecksum.equals(toChecksum)) {
                     logBoth(process.getId(), LogType.ERROR,
                             "Checksum check failed twice while trying to copy the file: '" + srcPath.toString() + "'");
                     log.debug("checksum original = " + fromChecksum);
                     log.debug("checksum after copy = " + toChecksum);
-                    log.debug("Already copied contents will be deleted.");
-                    provider.deleteInDir(toPath);
-                    provider.deleteDir(toPath);
                     throw new IOException("Checksum check failed twice!");
                 }
             }
+            checksumCache.put(srcPath, fromChecksum);
+            metrics.addFile(Files.size(srcPath));
+            journal.record(srcPath, destPath, fromChecksum);
+        } catch (IOException e) {
+            logBoth(process.getId(), LogType.ERROR, "Failed to copy the file '" + srcPath.toString() + "': " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Stops all workers of the given executor and waits for running copies to finish.
+     * 
+     * @param executor ExecutorService whose workers should be stopped
+     */
+    private void stopWorkers(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(WORKER_SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                log.warn("Some copy workers did not terminate in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Uploads the given files of the source folder. The files are distributed over `sftpChannels` channels, which are all opened on the same
+     * session. The first failing file aborts the whole upload.
+     * 
+     * @param channel ChannelSftp used by the first worker, or null if all channels should be opened for this upload
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the target folder
+     * @param files names of the files that should be copied, which may still be read from the source folder while the first files are uploaded
+     * @param manifest ExportManifest to record copied files
+     */
+    void copyImagesSftp(ChannelSftp channel, Path fromPath, Path toPath, Iterable<String> files, ExportManifest manifest)
+            throws SftpException, IOException {
+        int channelCount = Math.max(1, sftpChannels);
+        if (files instanceof Collection) {
+            // a planned list of files needs no more channels than files
+            channelCount = Math.max(1, Math.min(channelCount, ((Collection<?>) files).size()));
+        }
+        log.debug("Copy images from '" + fromPath.toString() + "' to '" + username + "@" + hostname + ":" + toPath.toString() + "' using "
+                + channelCount + " channel(s).");
+        FileQueue queue = new FileQueue();
+
+        List<ChannelSftp> channels = new ArrayList<>();
+        if (channel != null) {
+            channels.add(channel);
+        }
+        // channels opened for this upload are disconnected afterwards
+        int firstOpened = channels.size();
+        ExecutorService executor = Executors.newFixedThreadPool(channelCount);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        RemoteVerifier verifier = null;
+        try {
+            while (channels.size() < channelCount) {
+                channels.add(openSftpChannel());
+            }
+            // checksums are compared while the upload goes on, a verified file is recorded in the journal
+            if (verifySftp) {
+                // the session is looked up for every batch, since a lost connection is replaced by a new session
+                verifier = new RemoteVerifier(verifyMethod, verifyBatchSize, () -> jschSession, fromPath, toPath, checksumCache, metrics,
+                        journal::record);
+            }
+            RemoteVerifier uploadVerifier = verifier;
+            for (int i = 0; i < channelCount; i++) {
+                ChannelSftp uploadChannel = channels.get(i);
+                int channelNumber = i + 1;
+                completionService.submit(() -> uploadFiles(channelNumber, uploadChannel, fromPath, toPath, queue, uploadVerifier, manifest));
+            }
+            int finished = 0;
+            for (String file : files) {
+                queue.add(file);
+                // a channel only finishes early if its upload failed, which stops reading the source folder
+                Future<Integer> done = completionService.poll();
+                if (done != null) {
+                    done.get();
+                    finished++;
+                }
+            }
+            queue.complete();
+            for (; finished < channelCount; finished++) {
+                completionService.take().get();
+            }
+            if (verifier != null) {
+                // only the checksums of the last files are left to compare
+                repairUploads(fromPath, toPath, verifier.finish());
+            }
+        } catch (ExecutionException e) {
+            // let the other channels run dry
+            queue.clear();
+            stopWorkers(executor);
+            Throwable cause = e.getCause();
+            if (cause instanceof SftpException) {
+                throw (SftpException) cause;
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (DirectoryIteratorException e) {
+            queue.clear();
+            stopWorkers(executor);
+            throw e.getCause();
+        } catch (JSchException e) {
+            throw new IOException("Failed to open further SFTP channels.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload was interrupted.", e);
+        } finally {
+            stopWorkers(executor);
+            if (verifier != null) {
+                verifier.close();
+            }
+            for (ChannelSftp openedChannel : channels.subList(firstOpened, channels.size())) {
+                openedChannel.disconnect();
+            }
         }
     }
 
     /**
+     * Uploads files taken from the queue until it is complete and empty.
+     * 
+     * @param channelNumber number of the channel used for progress reports
+     * @param channel ChannelSftp used for the upload, it must not be used by other threads meanwhile
      * @param fromPath absolute path to the source folder
      * @param toPath absolute path to the target folder
+     * @param queue names of the files that still need to be uploaded
+     * @param verifier RemoteVerifier the uploaded files are handed to, or null if they are not verified
+     * @param manifest ExportManifest to record copied files
+     * @return number of files uploaded through this channel
+     * @throws SftpException
+     * @throws IOException
+     * @throws InterruptedException
      */
-    private void copyImagesSftp(Path fromPath, Path toPath) throws SftpException {
-        log.debug("Copy images from '" + fromPath.toString() + "' to '" + username + "@" + hostname + ":" + toPath.toString() + "'.");
-        StorageProviderInterface provider = StorageProvider.getInstance();
-        List<String> files = provider.list(fromPath.toString());
-        for (String file : files) {
-            Path srcPath = fromPath.resolve(file);
-            Path destPath = toPath.resolve(file);
-            sftpChannel.put(srcPath.toString(), destPath.toString());
+    private int uploadFiles(int channelNumber, ChannelSftp channel, Path fromPath, Path toPath, FileQueue queue, RemoteVerifier verifier,
+            ExportManifest manifest) throws SftpException, IOException, InterruptedException {
+        int count = 0;
+        String file;
+        while ((file = queue.take()) != null) {
+            if (journal.isTransferred(fromPath.resolve(file), toPath.resolve(file))) {
+                manifest.addSkipped(file);
+                continue;
+            }
+            channel = uploadFile(channel, fromPath.resolve(file), toPath.resolve(file));
+            if (verifier != null) {
+                // the checksum was computed during the upload, unless the upload was resumed
+                verifier.add(file, checksumCache.get(fromPath.resolve(file)));
+            }
+            manifest.addCopied(file);
+            count++;
+            log.debug("channel " + channelNumber + ": uploaded '" + file + "', " + count + " file(s) so far, " + queue.size() + " file(s) left");
+        }
+        if (sftpChannels > 1) {
+            logBoth(process.getId(), LogType.INFO, "SFTP channel " + channelNumber + " uploaded " + count + " file(s).");
+        }
+        return count;
+    }
+
+    /**
+     * 
+     * @param channel ChannelSftp used for the upload
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the remote file
+     * @return the ChannelSftp that should be used from now on, which is a new one if the given one had to be reopened
+     * @throws SftpException
+     * @throws IOException
+     */
+    private ChannelSftp uploadFile(ChannelSftp channel, Path srcPath, Path destPath) throws SftpException, IOException {
+        channel = putWithRetries(channel, srcPath, destPath);
+        if (deltaExport || useStaging) {
+            // keep the modification time of the source, so that the next delta export or staging attempt can detect unchanged files
+            channel.setMtime(destPath.toString(), (int) Files.getLastModifiedTime(srcPath).to(TimeUnit.SECONDS));
+        }
+        metrics.addFile(Files.size(srcPath));
+        if (!verifySftp) {
+            // a verified file is recorded by the RemoteVerifier once its checksum matches
+            journal.record(srcPath, destPath, getJournalChecksum(srcPath));
+        }
+
+        // The JSch library uses its internal algorithms to assure the integrity of transfered data.
+        // The optional checksum check additionally compares the checksums of the uploaded files to assure their integrity at rest.
+        return channel;
+    }
+
+    /**
+     * 
+     * @param srcPath absolute path to the source file
+     * @return SHA-256 checksum of the source file to be recorded in the journal, or null if no journal is kept
+     * @throws IOException
+     */
+    private String getJournalChecksum(Path srcPath) throws IOException {
+        // usually known already, since it is computed while the file is copied or uploaded
+        return journal.isEnabled() ? checksumCache.getOrCompute(srcPath) : null;
+    }
+
+    /**
+     * Uploads the files again whose remote checksum did not match, reading each one back right away.
+     * 
+     * @param fromPath absolute path to the source folder
+     * @param toPath absolute path to the remote target folder
+     * @param files names of the files whose verification failed
+     * @throws SftpException
+     * @throws IOException if a file fails the checksum check again
+     * @throws JSchException
+     */
+    private void repairUploads(Path fromPath, Path toPath, List<String> files) throws SftpException, IOException, JSchException {
+        if (files.isEmpty()) {
+            return;
+        }
+        log.debug("Uploading " + files.size() + " file(s) again whose checksum check failed.");
+        ChannelSftp channel = openSftpChannel();
+        try {
+            for (String file : files) {
+                Path srcPath = fromPath.resolve(file);
+                Path destPath = toPath.resolve(file);
+                // retry once
+                metrics.addRetry();
+                channel = putWithRetries(channel, srcPath, destPath);
+                if (!isRemoteCopyValid(channel, srcPath, destPath)) {
+                    logBoth(process.getId(), LogType.ERROR,
+                            "Checksum check failed twice while trying to upload the file: '" + srcPath.toString() + "'");
+                    throw new IOException("Checksum check failed twice!");
+                }
+                if (deltaExport || useStaging) {
+                    channel.setMtime(destPath.toString(), (int) Files.getLastModifiedTime(srcPath).to(TimeUnit.SECONDS));
+                }
+                journal.record(srcPath, destPath, checksumCache.get(srcPath));
+            }
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    /**
+     * Uploads a single file. A failed upload is retried up to `sftpRetries` times with an exponentially growing, randomized pause in between. Retries
+     * continue a partially uploaded file instead of starting from scratch, reconnecting first if the connection was lost. If the uploaded files
+     * are verified or recorded in a journal, the checksum of a file uploaded in one go is computed on the way and put into the checksumCache.
+     * 
+     * @param channel ChannelSftp used for the upload
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the remote file
+     * @return the ChannelSftp that should be used from now on, which is a new one if the given one had to be reopened
+     * @throws SftpException if the upload failed for good
+     * @throws IOException
+     */
+    private ChannelSftp putWithRetries(ChannelSftp channel, Path srcPath, Path destPath) throws SftpException, IOException {
+        int mode = ChannelSftp.OVERWRITE;
+        for (int attempt = 0;; attempt++) {
+            try {
+                if (mode != SKIP_UPLOAD) {
+                    RateLimiter.UploadMonitor monitor = rateLimiter == null ? null : rateLimiter.asProgressMonitor(transferPriority);
+                    long size = Files.size(srcPath);
+                    long start = System.nanoTime();
+                    // a resumed upload skips the start of the file, so its checksum cannot be computed on the way
+                    boolean computeChecksum = (verifySftp || journal.isEnabled()) && checksumCache.get(srcPath) == null;
+                    MessageDigest digest = computeChecksum && mode == ChannelSftp.OVERWRITE ? DigestUtils.getSha256Digest() : null;
+                    // JSch reads the file in packets of about 32 KB, the buffer turns them into few large reads of the source file
+                    InputStream buffered = new BufferedInputStream(Files.newInputStream(srcPath), transferTuning.getBufferSize(size));
+                    try (InputStream in = digest == null ? buffered : new DigestInputStream(buffered, digest)) {
+                        channel.put(in, destPath.toString(), monitor, mode);
+                    }
+                    if (monitor != null && monitor.isInterrupted()) {
+                        // JSch ends a cancelled upload as if it was complete
+                        throw new InterruptedIOException("The upload of '" + srcPath.toString() + "' was interrupted.");
+                    }
+                    if (mode == ChannelSftp.OVERWRITE) {
+                        transferTuning.record(size, System.nanoTime() - start);
+                    }
+                    if (digest != null) {
+                        checksumCache.put(srcPath, Hex.encodeHexString(digest.digest()));
+                    }
+                }
+                return channel;
+            } catch (SftpException e) {
+                if (attempt >= sftpRetries || e.id == ChannelSftp.SSH_FX_PERMISSION_DENIED || e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+                metrics.addRetry();
+                long backoff = getRetryBackoff(sftpRetryBackoff, sftpRetryMaxBackoff, attempt);
+                logBoth(process.getId(), LogType.WARN, "Failed to upload the file '" + srcPath.toString() + "', retrying in " + backoff + " ms: "
+                        + e.getMessage());
+                pause(backoff);
+                try {
+                    if (channel.isClosed() || !channel.isConnected()) {
+                        channel = reopenChannel(channel);
+                    }
+                    mode = determineResumeMode(channel, srcPath, destPath);
+                } catch (JSchException | SftpException e2) {
+                    // the next attempt will fail as well and retry again
+                    log.debug("Failed to prepare the retry: " + e2.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the pause with every retry up to the given maximum. The pause is randomized between half and all of it, so that exports that failed
+     * at the same time do not retry at the same time as well.
+     * 
+     * @param backoff pause before the first retry in milliseconds
+     * @param maxBackoff longest pause in milliseconds
+     * @param attempt number of the failed attempt, starting with 0
+     * @return pause before the next attempt in milliseconds
+     */
+    static long getRetryBackoff(long backoff, long maxBackoff, int attempt) {
+        long pause = Math.min(backoff << Math.min(attempt, 16), maxBackoff);
+        return pause / 2 + ThreadLocalRandom.current().nextLong(pause - pause / 2 + 1);
+    }
+
+    /**
+     * 
+     * @param channel ChannelSftp used to check the remote file
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the remote file
+     * @return ChannelSftp.RESUME if the remote file is a partial copy, SKIP_UPLOAD if it is complete, ChannelSftp.OVERWRITE otherwise
+     * @throws SftpException
+     * @throws IOException
+     */
+    private int determineResumeMode(ChannelSftp channel, Path srcPath, Path destPath) throws SftpException, IOException {
+        SftpATTRS attrs;
+        try {
+            attrs = channel.stat(destPath.toString());
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return ChannelSftp.OVERWRITE;
+            }
+            throw e;
+        }
+        long remoteSize = attrs.getSize();
+        long localSize = Files.size(srcPath);
+        log.debug("remote size of '" + destPath.toString() + "' is " + remoteSize + " of " + localSize + " bytes");
+        if (remoteSize == localSize) {
+            // a file of the same size is only complete if it got the modification time of the source after its upload, or if its checksum is
+            // compared by the RemoteVerifier anyway
+            boolean sameMtime = attrs.getMTime() == (int) Files.getLastModifiedTime(srcPath).to(TimeUnit.SECONDS);
+            return sameMtime && (deltaExport || useStaging) || verifySftp ? SKIP_UPLOAD : ChannelSftp.OVERWRITE;
+        }
+        return remoteSize < localSize ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+    }
+
+    /**
+     * 
+     * @param millis time to wait in milliseconds
+     * @throws IOException if the waiting thread was interrupted
+     */
+    private void pause(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload was interrupted.", e);
         }
+    }
+
+    /**
+     * Replaces a broken channel. If the whole session was lost, a new session is opened first. The channel is replaced by only one worker at a
+     * time, so that workers whose channels broke at the same time share the new session.
+     * 
+     * @param broken ChannelSftp that is not usable anymore
+     * @return new connected ChannelSftp
+     * @throws JSchException
+     */
+    private synchronized ChannelSftp reopenChannel(ChannelSftp broken) throws JSchException {
+        broken.disconnect();
+        if (jschSession == null || !jschSession.isConnected()) {
+            log.debug("SFTP session to " + hostname + " was lost, reconnecting.");
+            closeSession(false);
+            openSession();
+        }
+        ChannelSftp channel = openSftpChannel();
+        if (broken == sftpChannel) {
+            sftpChannel = channel;
+        }
+        return channel;
+    }
 
-        // No need for a checksum checking logic here, since the JSch library uses its internal algorithms to assure the integrity of transfered data.
+    /**
+     * 
+     * @param channel ChannelSftp used to read the remote file
+     * @param srcPath absolute path to the source file
+     * @param destPath absolute path to the remote file
+     * @return true if the remote file has the same SHA-256 checksum as the source file, false otherwise
+     * @throws IOException
+     * @throws SftpException
+     */
+    private boolean isRemoteCopyValid(ChannelSftp channel, Path srcPath, Path destPath) throws IOException, SftpException {
+        long start = ExportMetrics.start();
+        String fromChecksum = checksumCache.getOrCompute(srcPath);
+        try (InputStream in = channel.get(destPath.toString())) {
+            String toChecksum = DigestUtils.sha256Hex(in);
+            log.debug("checksum of '" + destPath.toString() + "': " + toChecksum + ", expected " + fromChecksum);
+            return fromChecksum.equals(toChecksum);
+        } finally {
+            metrics.stopChecksum(start);
+        }
     }
 
     /**
@@ -656,18 +2421,23 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @throws IOException
      */
     private void createCTLLocal(Path path) throws IOException {
-        // the .ctl file should have the same name as the folder specified by this path
-        String fileName = path.getFileName().toString().concat(".ctl");
-        // and it should be created next to the folder, i.e. into the folder's parent's path
-        Path parentPath = path.getParent();
         try {
-            Files.createFile(parentPath.resolve(fileName));
+            Files.createFile(getCtlFile(path));
         } catch (IOException e) {
             log.debug("Some error happened while trying to create the .ctl file.");
             throw e;
         }
     }
 
+    /**
+     * 
+     * @param path absolute path to the folder the .ctl file belongs to
+     * @return absolute path to the .ctl file, which has the same name as the folder and is located next to it
+     */
+    private static Path getCtlFile(Path path) {
+        return path.resolveSibling(path.getFileName().toString().concat(".ctl"));
+    }
+
     /**
      * 
      * @param path whose folderName and parent will be used
@@ -675,25 +2445,10 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
      * @throws SftpException
      */
     private void createCTLSftp(Path path) throws IOException, SftpException {
-        // the .ctl file should have the same name as the folder specified by this path
-        String fileName = path.getFileName().toString().concat(".ctl");
-        // and it should be created next to the folder, i.e. into the folder's parent's path
-        Path parentPath = path.getParent();
-        StorageProviderInterface provider = StorageProvider.getInstance();
-        try {
-            // create the empty .ctl file locally under the default temporary folder, e.g. /tmp for Linux
-            Path srcPath = Path.of(System.getProperty("java.io.tmpdir"), fileName);
-            Files.createFile(srcPath);
-
-            // copy this .ctl file to the remote location
-            Path destPath = parentPath.resolve(fileName);
-            sftpChannel.put(srcPath.toString(), destPath.toString());
-
-            // remove the local .ctl file
-            provider.deleteFile(srcPath);
-        } catch (IOException e) {
-            log.debug("Some error happened while trying to create the .ctl file locally.");
-            throw e;
+        Path destPath = getCtlFile(path);
+        // upload the empty .ctl file from memory, a local file would be shared by concurrent exports of the same id
+        try (InputStream in = new ByteArrayInputStream(new byte[0])) {
+            sftpChannel.put(in, destPath.toString());
         }
     }
 
@@ -707,6 +2462,7 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
         String logMessage = "VLM Export Plugin: " + message;
         switch (logType) {
             case ERROR:
+                problems.add(message);
                 log.error(logMessage);
                 break;
             case DEBUG:
@@ -726,31 +2482,78 @@ public class VlmExportPlugin implements IExportPlugin, IPlugin {
 
     /**
      * 
-     * @return ChannelSftp object
+     * @return connected Session object
      * @throws JSchException
      */
-    private ChannelSftp setupJSchWithPassword() throws JSchException {
+    private Session setupJSchWithPassword() throws JSchException {
         JSch jsch = new JSch();
         jsch.setKnownHosts(knownHosts);
-        Session jschSession = jsch.getSession(username, hostname);
-        jschSession.setPassword(password);
-        jschSession.connect();
-        return (ChannelSftp) jschSession.openChannel("sftp");
+        Session session = jsch.getSession(username, hostname);
+        session.setPort(port);
+        session.setPassword(password);
+        session.connect();
+        return session;
     }
 
     /**
      * 
-     * @return ChannelSftp object
+     * @return connected Session object
      * @throws JSchException
      */
-    private ChannelSftp setupJSchWithKey() throws JSchException {
+    private Session setupJSchWithKey() throws JSchException {
         JSch.setConfig("StrictHostKeyChecking", "no");
         JSch jsch = new JSch();
         jsch.addIdentity(keyPath);
-        Session jschSession = jsch.getSession(username, hostname);
-        jschSession.setPort(port);
-        jschSession.connect();
-        return (ChannelSftp) jschSession.openChannel("sftp");
+        Session session = jsch.getSession(username, hostname);
+        session.setPort(port);
+        session.connect();
+        return session;
+    }
+
+    /**
+     * 
+     * @return connected ChannelSftp object opened on the current session
+     * @throws JSchException
+     */
+    private ChannelSftp openSftpChannel() throws JSchException {
+        ChannelSftp channel = (ChannelSftp) jschSession.openChannel("sftp");
+        channel.connect();
+        if (sftpBulkRequests > 0) {
+            channel.setBulkRequests(sftpBulkRequests);
+        }
+        openChannels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Closes all channels that were opened during this export.
+     */
+    void closeChannels() {
+        synchronized (openChannels) {
+            for (ChannelSftp channel : openChannels) {
+                channel.exit();
+            }
+            openChannels.clear();
+        }
+    }
+
+    /**
+     * Gives the current session back to the session pool if it is pooled, or disconnects it otherwise.
+     * 
+     * @param reusable false if the session must not be handed out again, e.g. because opening a channel on it failed
+     */
+    void closeSession(boolean reusable) {
+        if (jschSession == null) {
+            return;
+        }
+        if (sessionKey == null) {
+            jschSession.disconnect();
+        } else if (reusable) {
+            SftpSessionPool.getInstance().release(sessionKey, jschSession, sessionIdleTimeout);
+        } else {
+            SftpSessionPool.getInstance().invalidate(jschSession);
+        }
+        jschSession = null;
     }
 
-}
\ No newline at end of file
+}
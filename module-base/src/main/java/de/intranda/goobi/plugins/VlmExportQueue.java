@@ -0,0 +1,198 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Process-wide queue of asynchronous exports. Every target gets its own bounded pool of workers, so that a slow target does not hold up exports
+ * to other targets. Once the queue of a target is full, further exports to it are executed by the submitting thread, which slows down the
+ * producers instead of piling up jobs in memory. The workers keep the JVM alive until their exports are finished, and a shutdown of the JVM waits
+ * for the queued exports for a while before it cancels the remaining ones, and then closes the pooled SFTP sessions.
+ */
+@Log4j2
+class VlmExportQueue {
+
+    private static final long IDLE_WORKER_TIMEOUT_SECONDS = 60;
+    private static final long SHUTDOWN_TIMEOUT_MINUTES = 10;
+    /** how long interrupted exports may take to clean up and record their failure */
+    private static final long INTERRUPTED_EXPORT_TIMEOUT_SECONDS = 30;
+
+    private static final VlmExportQueue INSTANCE = new VlmExportQueue();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            INSTANCE.shutdown(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            // the finished exports gave their sessions back to the pool
+            SftpSessionPool.getInstance().close();
+        }, "vlm-export-queue-shutdown"));
+    }
+
+    private final Map<String, ThreadPoolExecutor> executors = new HashMap<>();
+    private boolean shutdown;
+
+    /**
+     * An export together with what has to be done if it never runs.
+     */
+    private static class QueuedExport implements Runnable {
+        private final Runnable export;
+        private final Runnable cancel;
+        private final Thread caller = Thread.currentThread();
+        private volatile boolean executedByCaller;
+
+        private QueuedExport(Runnable export, Runnable cancel) {
+            this.export = export;
+            this.cancel = cancel;
+        }
+
+        @Override
+        public void run() {
+            // a rejected export is executed directly by the submitting thread, see CallerRuns
+            executedByCaller = Thread.currentThread() == caller;
+            export.run();
+        }
+    }
+
+    VlmExportQueue() {
+    }
+
+    /**
+     *
+     * @return the process-wide VlmExportQueue
+     */
+    static VlmExportQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enqueues an export. The pool of a target is created by its first export, later exports to the same target share it regardless of their own
+     * settings. Once the queue is shut down, exports are executed by the calling thread.
+     *
+     * @param target key of the target, e.g. user@host:port
+     * @param threads maximum number of exports to the target that run concurrently
+     * @param queueSize maximum number of exports to the target that may wait
+     * @param export the export to be executed
+     * @param cancel run instead of the export if the queue is shut down before the export started
+     * @return true if the export was enqueued, false if it was executed by the calling thread because the queue was full or shut down
+     */
+    boolean submit(String target, int threads, int queueSize, Runnable export, Runnable cancel) {
+        ThreadPoolExecutor executor = getExecutor(target, threads, queueSize);
+        if (executor == null) {
+            log.info("Export queue is shut down, exporting synchronously.");
+            export.run();
+            return false;
+        }
+        QueuedExport queued = new QueuedExport(export, cancel);
+        executor.execute(queued);
+        return !queued.executedByCaller;
+    }
+
+    /**
+     *
+     * @return ThreadPoolExecutor of the target, or null if the queue is shut down
+     */
+    private synchronized ThreadPoolExecutor getExecutor(String target, int threads, int queueSize) {
+        if (shutdown) {
+            return null;
+        }
+        return executors.computeIfAbsent(target, k -> {
+            log.debug("Creating export queue for '" + target + "' with " + threads + " thread(s) and " + queueSize + " slot(s).");
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, IDLE_WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize), new WorkerFactory(target), new CallerRuns(target));
+            // do not keep threads for targets that are rarely used
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    /**
+     *
+     * @param target key of the target
+     * @return number of exports to the target that are waiting or running
+     */
+    synchronized int getPendingExports(String target) {
+        ThreadPoolExecutor executor = executors.get(target);
+        return executor == null ? 0 : executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting exports and waits for the queued and running ones. Running exports are interrupted once the timeout has passed, and the
+     * exports that did not start until then are cancelled. Interrupted exports are given a little more time to record their failure.
+     *
+     * @param timeout maximum time to wait for all exports
+     * @param unit TimeUnit of the timeout
+     */
+    void shutdown(long timeout, TimeUnit unit) {
+        List<ThreadPoolExecutor> pools;
+        synchronized (this) {
+            shutdown = true;
+            pools = new ArrayList<>(executors.values());
+        }
+        pools.forEach(ThreadPoolExecutor::shutdown);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (ThreadPoolExecutor pool : pools) {
+                pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            for (ThreadPoolExecutor pool : pools) {
+                List<Runnable> cancelled = pool.shutdownNow();
+                if (!cancelled.isEmpty()) {
+                    log.warn("Export queue is shut down, cancelling " + cancelled.size() + " export(s) that did not start yet.");
+                }
+                for (Runnable export : cancelled) {
+                    ((QueuedExport) export).cancel.run();
+                }
+            }
+            for (ThreadPoolExecutor pool : pools) {
+                if (!pool.awaitTermination(INTERRUPTED_EXPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Some exports did not stop in time.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final String target;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private WorkerFactory(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            // not a daemon, so that running exports are finished before the JVM exits
+            return new Thread(r, "vlm-export-" + target + "-" + count.incrementAndGet());
+        }
+    }
+
+    private static class CallerRuns implements RejectedExecutionHandler {
+        private final String target;
+
+        private CallerRuns(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                log.info("Export queue for '" + target + "' is shut down, exporting synchronously.");
+            } else {
+                log.info("Export queue for '" + target + "' is full, exporting synchronously.");
+            }
+            r.run();
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Outcome of the export of one process within a batch export.
+ */
+@Value
+public class VlmExportResult {
+
+    /** ID of the exported process */
+    private int processId;
+    /** title of the exported process */
+    private String processTitle;
+    /** true if the export was successful, false otherwise */
+    private boolean success;
+    /** duration of the export in milliseconds */
+    private long durationMillis;
+    /** error messages that were written to the journal during the export */
+    private List<String> problems;
+
+}
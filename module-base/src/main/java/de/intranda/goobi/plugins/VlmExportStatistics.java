@@ -0,0 +1,153 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import de.intranda.goobi.plugins.ExportMetrics.Phase;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Accumulates the ExportMetrics of all exports and exposes them via JMX, so that they can be picked up by monitoring systems such as a
+ * Micrometer JMX bridge or a Prometheus JMX exporter.
+ */
+@Log4j2
+class VlmExportStatistics implements VlmExportStatisticsMBean {
+
+    static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=VlmExportStatistics";
+
+    private static final VlmExportStatistics INSTANCE = new VlmExportStatistics();
+
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder failedExports = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder[] phaseMillis = new LongAdder[Phase.values().length];
+    private final LongAdder checksumMillis = new LongAdder();
+    private volatile double lastMegabytesPerSecond;
+    private volatile double lastFilesPerSecond;
+
+    static {
+        register();
+    }
+
+    private VlmExportStatistics() {
+        for (int i = 0; i < phaseMillis.length; i++) {
+            phaseMillis[i] = new LongAdder();
+        }
+    }
+
+    private static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a previous version of the plugin may still be registered after the plugin was reloaded
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(INSTANCE, VlmExportStatisticsMBean.class), name);
+        } catch (JMException | RuntimeException e) {
+            log.warn("Failed to register the VLM export statistics via JMX.", e);
+        }
+    }
+
+    /**
+     *
+     * @return the process-wide VlmExportStatistics
+     */
+    static VlmExportStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     *
+     * @param metrics ExportMetrics of a finished export
+     * @param success true if the export was successful, false otherwise
+     */
+    void record(ExportMetrics metrics, boolean success) {
+        exports.increment();
+        if (!success) {
+            failedExports.increment();
+        }
+        files.add(metrics.getFiles());
+        bytes.add(metrics.getBytes());
+        retries.add(metrics.getRetries());
+        for (Phase phase : Phase.values()) {
+            phaseMillis[phase.ordinal()].add(metrics.getMillis(phase));
+        }
+        checksumMillis.add(metrics.getChecksumMillis());
+        lastMegabytesPerSecond = metrics.getMegabytesPerSecond();
+        lastFilesPerSecond = metrics.getFilesPerSecond();
+    }
+
+    @Override
+    public long getExports() {
+        return exports.sum();
+    }
+
+    @Override
+    public long getFailedExports() {
+        return failedExports.sum();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getMetadataMillis() {
+        return phaseMillis[Phase.METADATA.ordinal()].sum();
+    }
+
+    @Override
+    public long getConfigurationMillis() {
+        return phaseMillis[Phase.CONFIGURATION.ordinal()].sum();
+    }
+
+    @Override
+    public long getConnectionMillis() {
+        return phaseMillis[Phase.CONNECTION.ordinal()].sum();
+    }
+
+    @Override
+    public long getFoldersMillis() {
+        return phaseMillis[Phase.FOLDERS.ordinal()].sum();
+    }
+
+    @Override
+    public long getCopyMillis() {
+        return phaseMillis[Phase.COPY.ordinal()].sum();
+    }
+
+    @Override
+    public long getChecksumMillis() {
+        return checksumMillis.sum();
+    }
+
+    @Override
+    public double getLastMegabytesPerSecond() {
+        return lastMegabytesPerSecond;
+    }
+
+    @Override
+    public double getLastFilesPerSecond() {
+        return lastFilesPerSecond;
+    }
+
+}
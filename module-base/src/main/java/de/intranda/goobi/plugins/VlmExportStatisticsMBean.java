@@ -0,0 +1,37 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * JMX view of the accumulated statistics of all VLM exports since the start of the application, registered as
+ * `de.intranda.goobi.plugins:type=VlmExportStatistics`. All durations are in milliseconds.
+ */
+public interface VlmExportStatisticsMBean {
+
+    long getExports();
+
+    long getFailedExports();
+
+    long getFiles();
+
+    long getBytes();
+
+    long getRetries();
+
+    long getMetadataMillis();
+
+    long getConfigurationMillis();
+
+    long getConnectionMillis();
+
+    long getFoldersMillis();
+
+    long getCopyMillis();
+
+    long getChecksumMillis();
+
+    /** throughput of the most recent export in megabytes per second */
+    double getLastMegabytesPerSecond();
+
+    /** throughput of the most recent export in files per second */
+    double getLastFilesPerSecond();
+
+}
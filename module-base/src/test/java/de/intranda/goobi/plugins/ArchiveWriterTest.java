@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveWriterTest {
+
+    private static final int BLOCK_SIZE = 512;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSizeIsOctal() throws Exception {
+        byte[] header = ArchiveWriter.TarWriter.createHeader("00000001.tif", 1000, 0);
+        assertEquals("00000001750", new String(header, 124, 11, StandardCharsets.US_ASCII));
+        assertEquals(0, header[135]);
+        assertChecksum(header);
+    }
+
+    @Test
+    public void testSizeAbove8GbIsBase256() throws Exception {
+        long size = 9L * 1024 * 1024 * 1024 + 123;
+        byte[] header = ArchiveWriter.TarWriter.createHeader("00000001.tif", size, 0);
+        assertEquals((byte) 0x80, header[124]);
+        long decoded = 0;
+        for (int i = 125; i < 136; i++) {
+            decoded = (decoded << 8) | (header[i] & 0xff);
+        }
+        assertEquals(size, decoded);
+        assertChecksum(header);
+    }
+
+    @Test
+    public void testLongNameIsSplit() throws Exception {
+        String prefix = "media/" + "a".repeat(120);
+        byte[] header = ArchiveWriter.TarWriter.createHeader(prefix + "/00000001.tif", 0, 0);
+        assertEquals("00000001.tif", readString(header, 0, 100));
+        assertEquals(prefix, readString(header, 345, 155));
+        assertChecksum(header);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTooLongNameIsRejected() throws Exception {
+        ArchiveWriter.TarWriter.createHeader("b".repeat(101), 0, 0);
+    }
+
+    @Test
+    public void testArchiveEndsWithManifest() throws Exception {
+        Path first = folder.newFile("00000001.tif").toPath();
+        Files.write(first, new byte[] { 1, 2, 3 });
+        Path second = folder.newFile("00000001.jpg").toPath();
+        Files.write(second, new byte[1000]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveWriter archive = ArchiveWriter.create(ArchiveWriter.Format.TAR, out);
+        archive.addFile("00000001.tif", first);
+        archive.addFile("media/00000001.jpg", second);
+        archive.finish();
+
+        byte[] tar = out.toByteArray();
+        assertEquals(tar.length, archive.getBytesWritten());
+        assertEquals(0, tar.length % BLOCK_SIZE);
+        Map<String, byte[]> entries = readEntries(tar);
+        assertEquals(List.of("00000001.tif", "media/00000001.jpg", ArchiveWriter.MANIFEST_NAME), List.copyOf(entries.keySet()));
+        assertArrayEquals(Files.readAllBytes(first), entries.get("00000001.tif"));
+        assertArrayEquals(Files.readAllBytes(second), entries.get("media/00000001.jpg"));
+        String manifest = DigestUtils.sha256Hex(Files.readAllBytes(first)) + "  00000001.tif\n" + DigestUtils.sha256Hex(Files.readAllBytes(second))
+                + "  media/00000001.jpg\n";
+        assertEquals(manifest, new String(entries.get(ArchiveWriter.MANIFEST_NAME), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the entries of an archive with octal sizes and names of at most 100 bytes, stopping at the first empty block.
+     */
+    private static Map<String, byte[]> readEntries(byte[] tar) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        int offset = 0;
+        while (tar[offset] != 0) {
+            byte[] header = Arrays.copyOfRange(tar, offset, offset + BLOCK_SIZE);
+            assertChecksum(header);
+            String name = readString(header, 0, 100);
+            int size = Integer.parseInt(readString(header, 124, 12), 8);
+            entries.put(name, Arrays.copyOfRange(tar, offset + BLOCK_SIZE, offset + BLOCK_SIZE + size));
+            offset += BLOCK_SIZE + (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        }
+        // the archive ends with two empty blocks
+        assertEquals(tar.length, offset + 2 * BLOCK_SIZE);
+        return entries;
+    }
+
+    private static void assertChecksum(byte[] header) {
+        long checksum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        assertEquals(checksum, Long.parseLong(readString(header, 148, 8), 8));
+    }
+
+    private static String readString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,92 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BatchSchedulerTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, AtomicInteger> runningPerKey = new ConcurrentHashMap<>();
+    private final AtomicInteger maxRunningPerKey = new AtomicInteger();
+    private final List<String> done = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testTotalConcurrencyIsLimited() throws Exception {
+        BatchScheduler<String> scheduler = new BatchScheduler<>(3);
+        for (int group = 0; group < 4; group++) {
+            for (int i = 0; i < 5; i++) {
+                scheduler.add("group" + group, 3, "target" + group + "_" + i, "job" + group + "_" + i);
+            }
+        }
+        scheduler.run(this::runJob);
+        assertEquals(20, done.size());
+        assertTrue("ran " + maxRunning.get() + " jobs at once", maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testGroupConcurrencyIsLimited() throws Exception {
+        BatchScheduler<String> scheduler = new BatchScheduler<>(4);
+        for (int i = 0; i < 6; i++) {
+            scheduler.add("group", 2, "target" + i, "job" + i);
+        }
+        scheduler.run(this::runJob);
+        assertEquals(6, done.size());
+        assertTrue("ran " + maxRunning.get() + " jobs at once", maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testJobsWithSameKeyRunOneAfterAnother() throws Exception {
+        BatchScheduler<String> scheduler = new BatchScheduler<>(4);
+        for (int i = 0; i < 4; i++) {
+            scheduler.add("group", 4, "same", "job" + i);
+        }
+        scheduler.add("group", 4, "other", "other");
+        scheduler.run(job -> {
+            String key = job.startsWith("job") ? "same" : "other";
+            AtomicInteger perKey = runningPerKey.computeIfAbsent(key, k -> new AtomicInteger());
+            maxRunningPerKey.accumulateAndGet(perKey.incrementAndGet(), Math::max);
+            runJob(job);
+            perKey.decrementAndGet();
+        });
+        assertEquals(5, done.size());
+        assertEquals(1, maxRunningPerKey.get());
+        assertEquals(List.of("job0", "job1", "job2", "job3"), done.stream().filter(job -> job.startsWith("job")).toList());
+    }
+
+    @Test
+    public void testRuntimeExceptionDoesNotStopOtherJobs() throws Exception {
+        BatchScheduler<String> scheduler = new BatchScheduler<>(1);
+        scheduler.add("group", 1, "target", "broken");
+        scheduler.add("group", 1, "target", "job");
+        scheduler.run(job -> {
+            if ("broken".equals(job)) {
+                throw new IllegalStateException("deliberate failure");
+            }
+            runJob(job);
+        });
+        assertEquals(List.of("job"), done);
+    }
+
+    private void runJob(String job) {
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        done.add(job);
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path processFolder;
+    private Path image;
+    private String checksum;
+
+    @Before
+    public void setUp() throws Exception {
+        processFolder = folder.newFolder("process").toPath();
+        image = Files.createDirectories(processFolder.resolve("images/master")).resolve("00000001.tif");
+        Files.write(image, new byte[] { 1, 2, 3 });
+        checksum = LocalFileCopier.checksum(image);
+    }
+
+    @Test
+    public void testChecksumIsSavedAndLoaded() throws Exception {
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        assertNull(cache.get(image));
+        assertEquals(checksum, cache.getOrCompute(image));
+        cache.save();
+
+        // the sidecar file uses paths relative to its folder
+        List<String> lines = Files.readAllLines(processFolder.resolve(ChecksumCache.FILE_NAME));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("images/master/00000001.tif\t3\t"));
+        assertEquals(checksum, ChecksumCache.load(processFolder).get(image));
+    }
+
+    @Test
+    public void testChangedSizeInvalidatesChecksum() throws Exception {
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        cache.put(image, checksum);
+        FileTime lastModified = Files.getLastModifiedTime(image);
+        Files.write(image, new byte[] { 1, 2, 3, 4 });
+        Files.setLastModifiedTime(image, lastModified);
+        assertNull(cache.get(image));
+        assertEquals(LocalFileCopier.checksum(image), cache.getOrCompute(image));
+    }
+
+    @Test
+    public void testChangedModificationTimeInvalidatesChecksum() throws Exception {
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        cache.put(image, checksum);
+        cache.save();
+        Files.write(image, new byte[] { 3, 2, 1 });
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 1000));
+        assertNull(ChecksumCache.load(processFolder).get(image));
+    }
+
+    @Test
+    public void testCorruptSidecarIsRebuilt() throws Exception {
+        writeSidecar("images/master/00000001.tif\tthree\t0\t" + checksum);
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        assertNull(cache.get(image));
+        assertEquals(checksum, cache.getOrCompute(image));
+        cache.save();
+        assertEquals(checksum, ChecksumCache.load(processFolder).get(image));
+    }
+
+    @Test
+    public void testPartialLinesAreIgnored() throws Exception {
+        Path other = image.resolveSibling("00000002.tif");
+        Files.write(other, new byte[] { 4, 5, 6 });
+        Path third = image.resolveSibling("00000003.tif");
+        Files.write(third, new byte[] { 7, 8, 9 });
+        writeSidecar(line("images/master/00000001.tif", image, checksum),
+                "images/master/00000002.tif\t3",
+                line("images/master/00000003.tif", third, LocalFileCopier.checksum(third).substring(0, 20)));
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        assertEquals(checksum, cache.get(image));
+        assertNull(cache.get(other));
+        assertNull(cache.get(third));
+    }
+
+    @Test
+    public void testUnchangedCacheIsNotSaved() throws Exception {
+        ChecksumCache cache = ChecksumCache.load(processFolder);
+        cache.save();
+        assertFalse(Files.exists(processFolder.resolve(ChecksumCache.FILE_NAME)));
+        ChecksumCache memory = ChecksumCache.inMemory();
+        memory.put(image, checksum);
+        memory.save();
+        assertEquals(checksum, memory.get(image));
+        assertFalse(Files.exists(processFolder.resolve(ChecksumCache.FILE_NAME)));
+    }
+
+    private static String line(String key, Path file, String checksum) throws Exception {
+        return key + "\t" + Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis() + "\t" + checksum;
+    }
+
+    private void writeSidecar(String... lines) throws Exception {
+        Files.write(processFolder.resolve(ChecksumCache.FILE_NAME), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,271 @@
+package de.intranda.goobi.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.command.AbstractCommandSupport;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * In-process SFTP server on localhost for tests and benchmarks of the SFTP transfer path. It serves a local folder as its root directory and can
+ * simulate a slow connection, failing writes and dropped connections. Commands are refused, unless sha256sum is enabled by
+ * {@link #enableSha256sum()}.
+ */
+public class EmbeddedSftpServer implements Closeable {
+
+    public static final String USERNAME = "vlm";
+    public static final String PASSWORD = "vlm";
+
+    private final SshServer server;
+    private final Path root;
+
+    private volatile long latencyMillis;
+    /** number of write requests after which the connection is dropped, a negative value disables it */
+    private final AtomicInteger writesUntilDrop = new AtomicInteger(-1);
+    /** number of write requests that still need to fail */
+    private final AtomicInteger failingWrites = new AtomicInteger();
+    /** number of sha256sum commands run so far */
+    private final AtomicInteger sha256sumCalls = new AtomicInteger();
+
+    /**
+     *
+     * @param root local folder that is served as the root directory
+     * @throws IOException
+     */
+    public EmbeddedSftpServer(Path root) throws IOException {
+        this.root = root;
+        SftpSubsystemFactory sftp = new SftpSubsystemFactory();
+        sftp.addSftpEventListener(new FaultInjector());
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        SimpleGeneratorHostKeyProvider hostKeyProvider = new SimpleGeneratorHostKeyProvider();
+        hostKeyProvider.setAlgorithm("RSA");
+        server.setKeyPairProvider(hostKeyProvider);
+        server.setPasswordAuthenticator((username, password, session) -> USERNAME.equals(username) && PASSWORD.equals(password));
+        server.setSubsystemFactories(Collections.singletonList(sftp));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     *
+     * @param latencyMillis delay of every SFTP request in milliseconds
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Drops the connection once, after the given number of write requests.
+     *
+     * @param writes number of write requests that succeed before the connection is dropped
+     */
+    public void dropConnectionAfterWrites(int writes) {
+        writesUntilDrop.set(writes);
+    }
+
+    /**
+     *
+     * @param writes number of the next write requests that are answered with an error
+     */
+    public void failNextWrites(int writes) {
+        failingWrites.set(writes);
+    }
+
+    /**
+     * Lets clients run sha256sum the way RemoteVerifier does, i.e. `sha256sum --version` and `cd 'folder' && sha256sum -- 'file'...`. The
+     * checksums are computed in-process from the files below the root directory.
+     */
+    public void enableSha256sum() {
+        server.setCommandFactory((channel, command) -> new Sha256sumCommand(command));
+    }
+
+    /**
+     *
+     * @return number of sha256sum commands run so far
+     */
+    public int getSha256sumCalls() {
+        return sha256sumCalls.get();
+    }
+
+    /**
+     * Writes the host key of this server into a known hosts file, so that clients can connect with strict host key checking.
+     *
+     * @param knownHosts path of the known hosts file
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public void writeKnownHosts(Path knownHosts) throws IOException, GeneralSecurityException {
+        StringBuilder entries = new StringBuilder();
+        for (KeyPair keyPair : server.getKeyPairProvider().loadKeys(null)) {
+            entries.append("[localhost]:").append(getPort()).append(' ').append(PublicKeyEntry.toString(keyPair.getPublic())).append('\n');
+        }
+        Files.writeString(knownHosts, entries.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     *
+     * @return connected Session to this server
+     * @throws JSchException
+     */
+    public Session openSession() throws JSchException {
+        Session session = new JSch().getSession(USERNAME, "localhost", getPort());
+        session.setPassword(PASSWORD);
+        session.setConfig("StrictHostKeyChecking", "no");
+        session.connect();
+        return session;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+    }
+
+    private class FaultInjector implements SftpEventListener {
+
+        @Override
+        public void received(ServerSession session, int type, int id) throws IOException {
+            long latency = latencyMillis;
+            if (latency > 0) {
+                try {
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void writing(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, byte[] data, int dataOffset,
+                int dataLen) throws IOException {
+            if (failingWrites.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new IOException("Simulated write failure");
+            }
+            if (writesUntilDrop.getAndUpdate(n -> n < 0 ? n : n - 1) == 0) {
+                session.close(true);
+                throw new IOException("Simulated dropped connection");
+            }
+        }
+    }
+
+    private class Sha256sumCommand extends AbstractCommandSupport {
+
+        private Sha256sumCommand(String command) {
+            super(command, null);
+        }
+
+        @Override
+        public void run() {
+            sha256sumCalls.incrementAndGet();
+            List<String> words = splitQuoted(getCommand());
+            try {
+                if (words.equals(List.of("sha256sum", "--version"))) {
+                    write(getOutputStream(), "sha256sum (embedded)\n");
+                    onExit(0);
+                } else if (words.size() > 5 && words.get(0).equals("cd") && words.subList(2, 5).equals(List.of("&&", "sha256sum", "--"))) {
+                    onExit(sha256sum(root.resolve(words.get(1).replaceFirst("^/+", "")), words.subList(5, words.size())));
+                } else {
+                    write(getErrorStream(), "unsupported command\n");
+                    onExit(127);
+                }
+            } catch (IOException e) {
+                onExit(1, e.getMessage());
+            }
+        }
+
+        /**
+         *
+         * @return exit status, 1 if some of the files could not be read as by sha256sum
+         */
+        private int sha256sum(Path folder, List<String> files) throws IOException {
+            int status = 0;
+            for (String file : files) {
+                Path path = folder.resolve(file);
+                if (Files.isRegularFile(path)) {
+                    write(getOutputStream(), DigestUtils.sha256Hex(Files.readAllBytes(path)) + "  " + file + "\n");
+                } else {
+                    write(getErrorStream(), "sha256sum: " + file + ": No such file or directory\n");
+                    status = 1;
+                }
+            }
+            return status;
+        }
+
+        private void write(OutputStream out, String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    /**
+     *
+     * @return the words of a command whose arguments are quoted for a POSIX shell
+     */
+    private static List<String> splitQuoted(String command) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quoted) {
+                if (c == '\'') {
+                    quoted = false;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'') {
+                quoted = true;
+                word = word == null ? new StringBuilder() : word;
+            } else if (c == '\\' && i + 1 < command.length()) {
+                word = word == null ? new StringBuilder() : word;
+                word.append(command.charAt(++i));
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                word = word == null ? new StringBuilder() : word;
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+}
@@ -0,0 +1,163 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportJournalTest {
+
+    private static final String TARGET = "user@host:22";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path processFolder;
+    private Path root;
+    private Path source;
+    private Path journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        processFolder = folder.newFolder("process").toPath();
+        root = folder.newFolder("target").toPath();
+        source = folder.newFolder("master").toPath().resolve("00000001.tif");
+        Files.write(source, new byte[] { 1, 2, 3 });
+        journalFile = processFolder.resolve(ExportJournal.FILE_NAME);
+    }
+
+    @Test
+    public void testNewJournalStartsWithTarget() throws Exception {
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertTrue(journal.isEnabled());
+            assertFalse(journal.isResumed());
+        }
+        assertEquals(List.of("T\t" + TARGET + "\t" + root), Files.readAllLines(journalFile));
+    }
+
+    @Test
+    public void testInterruptedExportIsResumed() throws Exception {
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            journal.prepared();
+            journal.record(source, root.resolve("00000001.tif"), "abc");
+        }
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertTrue(journal.isResumed());
+            assertTrue(journal.isTransferred(source, root.resolve("00000001.tif")));
+            assertFalse(journal.isTransferred(source, root.resolve("00000002.tif")));
+            // a resumed journal is appended to, its target folders were prepared already
+            journal.prepared();
+        }
+        List<String> lines = Files.readAllLines(journalFile);
+        assertEquals(3, lines.size());
+        assertEquals("P", lines.get(1));
+        assertTrue(lines.get(2).startsWith("F\t00000001.tif\t3\t"));
+        assertTrue(lines.get(2).endsWith("\tabc"));
+    }
+
+    @Test
+    public void testChangedSourceIsTransferredAgain() throws Exception {
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            journal.prepared();
+            journal.record(source, root.resolve("00000001.tif"), "abc");
+        }
+        Files.write(source, new byte[] { 1, 2, 3, 4 });
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertTrue(journal.isResumed());
+            assertFalse(journal.isTransferred(source, root.resolve("00000001.tif")));
+        }
+    }
+
+    @Test
+    public void testUnpreparedExportIsNotResumed() throws Exception {
+        writeJournal("T\t" + TARGET + "\t" + root);
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertFalse(journal.isResumed());
+        }
+    }
+
+    @Test
+    public void testCompletedExportIsNotResumed() throws Exception {
+        writeJournal("T\t" + TARGET + "\t" + root, "P", fileLine(), "C");
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertFalse(journal.isResumed());
+            assertFalse(journal.isTransferred(source, root.resolve("00000001.tif")));
+        }
+        assertEquals(1, Files.readAllLines(journalFile).size());
+    }
+
+    @Test
+    public void testJournalOfOtherTargetIsReplaced() throws Exception {
+        writeJournal("T\tother@host:22\t" + root, "P", fileLine());
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertFalse(journal.isResumed());
+        }
+        assertEquals(List.of("T\t" + TARGET + "\t" + root), Files.readAllLines(journalFile));
+    }
+
+    @Test
+    public void testJournalIsNotReplayedIfNotResumable() throws Exception {
+        writeJournal("T\t" + TARGET + "\t" + root, "P", fileLine());
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, false)) {
+            assertFalse(journal.isResumed());
+            assertFalse(journal.isTransferred(source, root.resolve("00000001.tif")));
+        }
+    }
+
+    @Test
+    public void testPartialLineIsIgnored() throws Exception {
+        // the export died while the line was written
+        writeJournal("T\t" + TARGET + "\t" + root, "P", "F\t00000001.tif\t3");
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertTrue(journal.isResumed());
+            assertFalse(journal.isTransferred(source, root.resolve("00000001.tif")));
+        }
+    }
+
+    @Test
+    public void testCorruptJournalIsReplaced() throws Exception {
+        writeJournal("T\t" + TARGET + "\t" + root, "P", "F\t00000001.tif\tthree\t0\t-");
+        try (ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true)) {
+            assertFalse(journal.isResumed());
+        }
+        assertEquals(1, Files.readAllLines(journalFile).size());
+    }
+
+    @Test
+    public void testCompletedDeletesJournal() throws Exception {
+        ExportJournal journal = ExportJournal.open(processFolder, TARGET, root, true);
+        journal.prepared();
+        journal.record(source, root.resolve("00000001.tif"), "abc");
+        journal.completed();
+        assertFalse(Files.exists(journalFile));
+    }
+
+    @Test
+    public void testDisabledJournalRecordsNothing() throws Exception {
+        ExportJournal journal = ExportJournal.disabled();
+        assertFalse(journal.isEnabled());
+        journal.prepared();
+        journal.record(source, root.resolve("00000001.tif"), "abc");
+        journal.completed();
+        assertFalse(journal.isTransferred(source, root.resolve("00000001.tif")));
+        assertFalse(Files.exists(journalFile));
+    }
+
+    private String fileLine() throws Exception {
+        return "F\t00000001.tif\t" + Files.size(source) + "\t" + Files.getLastModifiedTime(source).toMillis() + "\tabc";
+    }
+
+    private void writeJournal(String... lines) throws Exception {
+        Files.write(journalFile, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,207 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * End-to-end tests of the local copy path.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ VlmExportPlugin.class, Process.class, StorageProvider.class })
+@PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "javax.crypto.*" })
+public class LocalExportTest {
+
+    private static final int FILE_COUNT = 5;
+    private static final int FILE_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path target;
+    private Process process;
+    private VlmExportPlugin plugin;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMock.mockStatic(StorageProvider.class);
+        EasyMock.expect(StorageProvider.getInstance()).andReturn(new NIOFileUtils()).anyTimes();
+        PowerMock.replay(StorageProvider.class);
+
+        source = folder.newFolder("master").toPath();
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            content[0] = (byte) i;
+            Files.write(source.resolve(String.format("%08d.tif", i + 1)), content);
+        }
+        target = folder.newFolder("vlm").toPath().resolve("id");
+
+        process = EasyMock.createMock(Process.class);
+        EasyMock.expect(process.getId()).andReturn(0).anyTimes();
+        EasyMock.replay(process);
+
+        plugin = new VlmExportPlugin();
+        plugin.setProcess(process);
+        plugin.setUseSftp(false);
+        plugin.setThreads(2);
+        plugin.setLocalCopyMode(LocalFileCopier.Mode.STREAM);
+        plugin.setTargetPath(target);
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        assertTrue(export());
+        assertExported();
+        assertTrue(Files.exists(target.resolveSibling("id.ctl")));
+    }
+
+    @Test
+    public void testDeltaExport() throws Exception {
+        plugin.setDeltaExport(true);
+        assertTrue(export());
+        Files.delete(target.resolveSibling("id.ctl"));
+        Object unchanged = getFileKey(target.resolve("00000001.tif"));
+
+        changeSource();
+        assertTrue(export());
+        assertExported();
+        assertFalse(Files.exists(target.resolve("00000003.tif")));
+        assertEquals(unchanged, getFileKey(target.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testDeltaExportComparesChecksums() throws Exception {
+        plugin.setDeltaExport(true);
+        assertTrue(export());
+        Files.delete(target.resolveSibling("id.ctl"));
+        Object unchanged = getFileKey(target.resolve("00000001.tif"));
+        // same size and modification time, but different content
+        Path changed = source.resolve("00000004.tif");
+        FileTime lastModified = Files.getLastModifiedTime(changed);
+        byte[] content = Files.readAllBytes(changed);
+        content[1] = 42;
+        Files.write(changed, content);
+        Files.setLastModifiedTime(changed, lastModified);
+
+        plugin.setDeltaChecksum(true);
+        changeSource();
+        assertTrue(export());
+        assertExported();
+        assertEquals(unchanged, getFileKey(target.resolve("00000001.tif")));
+    }
+
+    @Test
+    public void testDeltaExportWithoutChecksumsComparesSizeAndTime() throws Exception {
+        plugin.setDeltaExport(true);
+        assertTrue(export());
+        Files.delete(target.resolveSibling("id.ctl"));
+        Path changed = source.resolve("00000004.tif");
+        byte[] exported = Files.readAllBytes(target.resolve("00000004.tif"));
+        FileTime lastModified = Files.getLastModifiedTime(changed);
+        byte[] content = Files.readAllBytes(changed);
+        content[1] = 42;
+        Files.write(changed, content);
+        Files.setLastModifiedTime(changed, lastModified);
+
+        assertTrue(export());
+        assertArrayEquals(exported, Files.readAllBytes(target.resolve("00000004.tif")));
+    }
+
+    @Test
+    public void testStagedDeltaExportKeepsTargetUntilPublished() throws Exception {
+        plugin.setUseStaging(true);
+        plugin.setDeltaExport(true);
+        assertTrue(export());
+        // the ingest picked up the first export
+        Files.delete(target.resolveSibling("id.ctl"));
+
+        changeSource();
+        byte[] published = Files.readAllBytes(target.resolve("00000002.tif"));
+        // a reader of the published folder, which must not see the new content
+        Path reader = folder.getRoot().toPath().resolve("reader.tif");
+        Files.createLink(reader, target.resolve("00000002.tif"));
+
+        assertTrue(plugin.prepareStaging());
+        Path staging = plugin.getStagingPath();
+        // the published folder stays in place while the staging folder is filled
+        assertEquals(FILE_COUNT, count(target));
+        assertEquals(FILE_COUNT, count(staging));
+        assertTrue(Files.isSameFile(target.resolve("00000001.tif"), staging.resolve("00000001.tif")));
+
+        assertTrue(plugin.tryCopy(process, source, target, target, false));
+        assertExported();
+        assertFalse(Files.exists(target.resolve("00000003.tif")));
+        assertFalse(Files.exists(staging));
+        assertArrayEquals(published, Files.readAllBytes(reader));
+    }
+
+    private boolean export() throws Exception {
+        if (plugin.isUseStaging()) {
+            assertTrue(plugin.prepareStaging());
+        } else {
+            assertTrue(plugin.createFolder(false, target));
+        }
+        return plugin.tryCopy(process, source, target, target, false);
+    }
+
+    /**
+     * Changes the second file, removes the third one and adds a sixth one.
+     */
+    private void changeSource() throws Exception {
+        Files.write(source.resolve("00000002.tif"), new byte[] { 1, 2, 3 });
+        Files.delete(source.resolve("00000003.tif"));
+        Files.write(source.resolve("00000006.tif"), new byte[] { 4, 5, 6 });
+    }
+
+    /**
+     * 
+     * @return key of the file, which differs if the file was copied again
+     */
+    private static Object getFileKey(Path path) throws Exception {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private void assertExported() throws Exception {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(source)) {
+            files = stream.toList();
+        }
+        for (Path file : files) {
+            Path exported = target.resolve(file.getFileName().toString());
+            assertTrue(Files.exists(exported));
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(exported));
+        }
+        assertEquals(files.size(), count(target));
+    }
+
+    private static long count(Path path) throws Exception {
+        try (Stream<Path> stream = Files.list(path)) {
+            return stream.count();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalFileCopierTest {
+
+    private static final byte[] MASTER = { 1, 2, 3, 4, 5 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path target;
+
+    @Before
+    public void setUp() throws Exception {
+        source = folder.newFolder("master").toPath().resolve("00000001.tif");
+        Files.write(source, MASTER);
+        target = folder.newFolder("target").toPath().resolve("00000001.tif");
+    }
+
+    @Test
+    public void testStreamDoesNotWriteThroughHardLink() throws Exception {
+        assertHardLinkIsReplaced(LocalFileCopier.Mode.STREAM);
+    }
+
+    @Test
+    public void testTransferDoesNotWriteThroughHardLink() throws Exception {
+        assertHardLinkIsReplaced(LocalFileCopier.Mode.TRANSFER);
+    }
+
+    @Test
+    public void testStreamReturnsChecksum() throws Exception {
+        LocalFileCopier.Result result = new LocalFileCopier(false, LocalFileCopier.Mode.STREAM).copy(source, target);
+        assertEquals(LocalFileCopier.checksum(source), result.getChecksum());
+        assertEquals(LocalFileCopier.Mode.STREAM, result.getMode());
+        assertArrayEquals(MASTER, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testHardLinkIsReported() throws Exception {
+        LocalFileCopier.Result result = new LocalFileCopier(false, LocalFileCopier.Mode.HARDLINK).copy(source, target);
+        // the source was not read, and the copy needs no verification
+        assertNull(result.getChecksum());
+        assertEquals(LocalFileCopier.Mode.HARDLINK, result.getMode());
+        assertTrue(Files.isSameFile(source, target));
+    }
+
+    @Test
+    public void testBufferPoolIsBounded() {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            buffers.add(LocalFileCopier.takeBuffer(8 * 1024 * (i + 1)));
+        }
+        buffers.forEach(LocalFileCopier::returnBuffer);
+        assertTrue(LocalFileCopier.getPooledBuffers() <= 4);
+        // the largest buffers are kept
+        assertEquals(80 * 1024, LocalFileCopier.takeBuffer(80 * 1024).capacity());
+    }
+
+    /**
+     * A hard link left by an earlier export must not be truncated, since that would empty the master image.
+     */
+    private void assertHardLinkIsReplaced(LocalFileCopier.Mode mode) throws Exception {
+        new LocalFileCopier(false, LocalFileCopier.Mode.HARDLINK).copy(source, target);
+        // the master image changed since, e.g. it was corrected
+        Path corrected = folder.newFile("corrected.tif").toPath();
+        Files.write(corrected, new byte[] { 9, 9 });
+
+        new LocalFileCopier(false, mode).copy(corrected, target);
+
+        assertArrayEquals(MASTER, Files.readAllBytes(source));
+        assertArrayEquals(new byte[] { 9, 9 }, Files.readAllBytes(target));
+        assertFalse(Files.isSameFile(source, target));
+    }
+
+}
@@ -0,0 +1,95 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.MetsMetadataReader.LogicalElement;
+
+public class MetsMetadataReaderTest {
+
+    private static final List<String> FIELDS = List.of("CatalogIDDigital", "CurrentNoSorting");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMonograph() throws Exception {
+        Path meta = write("meta.xml", mets(dmdSec("DMDLOG_0000", "CatalogIDDigital", " 990012345670206881 ")
+                + logicalStructMap("<mets:div ID=\"LOG_0000\" TYPE=\"Monograph\" DMDID=\"DMDLOG_0000\"/>")));
+        LogicalElement logical = MetsMetadataReader.read(meta, FIELDS, "Periodical"::equals);
+        assertNotNull(logical);
+        assertEquals("Monograph", logical.getType());
+        assertFalse(logical.isAnchor());
+        assertEquals("990012345670206881", logical.get("CatalogIDDigital"));
+        assertEquals("", logical.get("CurrentNoSorting"));
+        assertNull(logical.getFirstChild());
+    }
+
+    @Test
+    public void testAnchorMetadataAreReadFromAnchorFile() throws Exception {
+        write("meta_anchor.xml", mets(dmdSec("DMDLOG_0000", "CatalogIDDigital", "990099999990206881")
+                + logicalStructMap("<mets:div ID=\"LOG_0000\" TYPE=\"Periodical\" DMDID=\"DMDLOG_0000\"><mets:div ID=\"LOG_0001\" "
+                        + "TYPE=\"PeriodicalVolume\"/></mets:div>")));
+        Path meta = write("meta.xml", mets(dmdSec("DMDLOG_0001", "CurrentNoSorting", "12")
+                + logicalStructMap("<mets:div ID=\"LOG_0000\" TYPE=\"Periodical\" DMDID=\"DMDLOG_0000\"><mets:mptr/><mets:div ID=\"LOG_0001\" "
+                        + "TYPE=\"PeriodicalVolume\" DMDID=\"DMDLOG_0001\"><mets:div ID=\"LOG_0002\" TYPE=\"Article\"/></mets:div></mets:div>")));
+        LogicalElement logical = MetsMetadataReader.read(meta, FIELDS, "Periodical"::equals);
+        assertNotNull(logical);
+        assertTrue(logical.isAnchor());
+        assertEquals("990099999990206881", logical.get("CatalogIDDigital"));
+        assertEquals("PeriodicalVolume", logical.getFirstChild().getType());
+        assertEquals("12", logical.getFirstChild().get("CurrentNoSorting"));
+    }
+
+    @Test
+    public void testMetadataWithoutNameIsSkipped() throws Exception {
+        String unnamed = "<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>"
+                + "<goobi:metadata>unnamed</goobi:metadata><goobi:metadata name=\"CatalogIDDigital\">990012345670206881</goobi:metadata>"
+                + "</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>";
+        Path meta = write("meta.xml", mets(unnamed + logicalStructMap("<mets:div ID=\"LOG_0000\" TYPE=\"Monograph\" DMDID=\"DMDLOG_0000\"/>")));
+        LogicalElement logical = MetsMetadataReader.read(meta, FIELDS, "Periodical"::equals);
+        assertNotNull(logical);
+        assertEquals("990012345670206881", logical.get("CatalogIDDigital"));
+    }
+
+    @Test
+    public void testOtherFormatIsNotRead() throws Exception {
+        Path meta = write("meta.xml", "<?xml version=\"1.0\"?><RDF/>");
+        assertNull(MetsMetadataReader.read(meta, FIELDS, "Periodical"::equals));
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.writeString(folder.getRoot().toPath().resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String mets(String content) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" "
+                + "xmlns:mods=\"http://www.loc.gov/mods/v3\" xmlns:goobi=\"http://meta.goobi.org/v1.5.1/\">" + content + "</mets:mets>";
+    }
+
+    private static String dmdSec(String id, String name, String value) {
+        return "<mets:dmdSec ID=\"" + id + "\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>"
+                + "<goobi:metadata name=\"TitleDocMain\">Title</goobi:metadata>"
+                + "<goobi:metadata name=\"" + name + "\" type=\"person\"><goobi:displayName>Person</goobi:displayName></goobi:metadata>"
+                + "<goobi:metadata name=\"" + name + "\">" + value + "</goobi:metadata>"
+                + "</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>";
+    }
+
+    private static String logicalStructMap(String divs) {
+        return "<mets:structMap TYPE=\"LOGICAL\">" + divs + "</mets:structMap><mets:structMap TYPE=\"PHYSICAL\"><mets:div TYPE=\"BoundBook\"/>"
+                + "</mets:structMap>";
+    }
+
+}
@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testParseRate() {
+        assertEquals(20L * 1024 * 1024, RateLimiter.parseRate("20M"));
+        assertEquals(500, RateLimiter.parseRate("500"));
+        assertEquals(0, RateLimiter.parseRate(""));
+        assertEquals(0, RateLimiter.parseRate(null));
+        assertEquals(0, RateLimiter.parseRate("fast"));
+    }
+
+    @Test
+    public void testLimitersAreSharedPerTarget() {
+        RateLimiter limiter = RateLimiter.forTarget("shared@host:22", 1000);
+        assertSame(limiter, RateLimiter.forTarget("shared@host:22", 2000));
+        assertNotSame(limiter, RateLimiter.forTarget("other@host:22", 1000));
+    }
+
+    @Test
+    public void testBurstIsGrantedRightAway() throws Exception {
+        RateLimiter limiter = RateLimiter.forTarget("burst@host:22", 100_000);
+        long start = System.nanoTime();
+        // the full bucket and a request larger than the rest of it
+        limiter.acquire(60_000, RateLimiter.Priority.NORMAL);
+        limiter.acquire(90_000, RateLimiter.Priority.NORMAL);
+        assertTrue(elapsedMillis(start) < 200);
+    }
+
+    @Test
+    public void testDebtIsPaidOffBeforeTheNextTransfer() throws Exception {
+        RateLimiter limiter = RateLimiter.forTarget("debt@host:22", 100_000);
+        limiter.acquire(150_000, RateLimiter.Priority.NORMAL);
+        long start = System.nanoTime();
+        // the bucket is 50,000 bytes in debt, which takes half a second at 100,000 bytes per second
+        limiter.acquire(1, RateLimiter.Priority.NORMAL);
+        long elapsed = elapsedMillis(start);
+        assertTrue("waited " + elapsed + " ms", elapsed >= 400 && elapsed < 2000);
+    }
+
+    @Test
+    public void testHigherPriorityIsServedFirst() throws Exception {
+        RateLimiter limiter = RateLimiter.forTarget("priority@host:22", 10_000);
+        // the bucket is 10,000 bytes in debt, which takes a second to pay off
+        limiter.acquire(20_000, RateLimiter.Priority.NORMAL);
+        List<RateLimiter.Priority> granted = Collections.synchronizedList(new ArrayList<>());
+        Thread bulk = acquireInThread(limiter, 1, RateLimiter.Priority.BULK, granted);
+        Thread.sleep(100);
+        // the urgent transfer puts the bucket in debt again, so the bulk transfer is still waiting when the urgent one is recorded
+        Thread urgent = acquireInThread(limiter, 5_000, RateLimiter.Priority.URGENT, granted);
+        bulk.join(5000);
+        urgent.join(5000);
+        assertEquals(List.of(RateLimiter.Priority.URGENT, RateLimiter.Priority.BULK), granted);
+    }
+
+    @Test
+    public void testInterruptedUploadIsReported() throws Exception {
+        RateLimiter limiter = RateLimiter.forTarget("interrupted@host:22", 1000);
+        limiter.acquire(100_000, RateLimiter.Priority.NORMAL);
+        RateLimiter.UploadMonitor monitor = limiter.asProgressMonitor(RateLimiter.Priority.NORMAL);
+        AtomicBoolean counted = new AtomicBoolean(true);
+        AtomicBoolean interruptFlag = new AtomicBoolean();
+        Thread upload = new Thread(() -> {
+            counted.set(monitor.count(32 * 1024));
+            interruptFlag.set(Thread.currentThread().isInterrupted());
+        });
+        upload.start();
+        Thread.sleep(100);
+        upload.interrupt();
+        upload.join(5000);
+        assertFalse(counted.get());
+        assertTrue(monitor.isInterrupted());
+        assertTrue(interruptFlag.get());
+    }
+
+    private static Thread acquireInThread(RateLimiter limiter, long bytes, RateLimiter.Priority priority, List<RateLimiter.Priority> granted) {
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(bytes, priority);
+                granted.add(priority);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+}
@@ -0,0 +1,136 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jcraft.jsch.Session;
+
+/**
+ * Tests of the verification of uploaded files against an {@link EmbeddedSftpServer}, which only runs sha256sum if it is enabled.
+ */
+public class RemoteVerifierTest {
+
+    private static final int FILE_COUNT = 3;
+    private static final Path TARGET = Path.of("/target");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedSftpServer server;
+    private Path source;
+    private Path target;
+    private volatile Session session;
+    private final List<String> verified = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        source = folder.newFolder("master").toPath();
+        Path remoteRoot = folder.newFolder("remote").toPath();
+        target = Files.createDirectory(remoteRoot.resolve("target"));
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            Path file = source.resolve(getName(i));
+            Files.write(file, new byte[] { (byte) i, 2, 3 });
+            Files.copy(file, target.resolve(getName(i)));
+        }
+        server = new EmbeddedSftpServer(remoteRoot);
+        session = server.openSession();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void testUploadedFilesAreVerified() throws Exception {
+        RemoteVerifier verifier = createVerifier(RemoteVerifier.Method.READBACK);
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            verifier.add(getName(i), null);
+        }
+        assertTrue(verifier.finish().isEmpty());
+        assertEquals(FILE_COUNT, verified.size());
+    }
+
+    @Test
+    public void testChecksumOfUploadIsUsed() throws Exception {
+        RemoteVerifier verifier = createVerifier(RemoteVerifier.Method.READBACK);
+        verifier.add(getName(1), DigestUtils.sha256Hex(Files.readAllBytes(source.resolve(getName(1)))));
+        // a checksum computed during the upload that differs from the remote file is not computed again from the source file
+        verifier.add(getName(2), DigestUtils.sha256Hex(new byte[] { 9 }));
+        assertEquals(List.of(getName(2)), verifier.finish());
+        assertEquals(List.of(getName(1)), verified);
+    }
+
+    @Test
+    public void testChangedAndMissingFilesAreReported() throws Exception {
+        Files.write(target.resolve(getName(1)), new byte[] { 9 });
+        Files.delete(target.resolve(getName(2)));
+        // the embedded server does not run sha256sum, so only the sizes of the files are compared
+        RemoteVerifier verifier = createVerifier(RemoteVerifier.Method.EXEC);
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            verifier.add(getName(i), null);
+        }
+        List<String> mismatched = verifier.finish();
+        Collections.sort(mismatched);
+        assertEquals(List.of(getName(1), getName(2)), mismatched);
+        assertEquals(List.of(getName(3)), verified);
+    }
+
+    @Test
+    public void testSha256sumFindsChangedContent() throws Exception {
+        server.enableSha256sum();
+        // the size is unchanged, so only the checksums tell the difference
+        Files.write(target.resolve(getName(1)), new byte[] { 9, 9, 9 });
+        Files.delete(target.resolve(getName(2)));
+        RemoteVerifier verifier = createVerifier(RemoteVerifier.Method.EXEC);
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            verifier.add(getName(i), DigestUtils.sha256Hex(Files.readAllBytes(source.resolve(getName(i)))));
+        }
+        List<String> mismatched = verifier.finish();
+        Collections.sort(mismatched);
+        assertEquals(List.of(getName(1), getName(2)), mismatched);
+        assertEquals(List.of(getName(3)), verified);
+        assertTrue(server.getSha256sumCalls() >= 2);
+    }
+
+    @Test
+    public void testReconnectedSessionIsUsed() throws Exception {
+        RemoteVerifier verifier = createVerifier(RemoteVerifier.Method.READBACK);
+        verifier.add(getName(1), null);
+        for (int i = 0; i < 500 && verified.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, verified.size());
+        // the connection was lost and the upload reconnected
+        session.disconnect();
+        session = server.openSession();
+        verifier.add(getName(2), null);
+        verifier.add(getName(3), null);
+        assertTrue(verifier.finish().isEmpty());
+        assertEquals(FILE_COUNT, verified.size());
+    }
+
+    private RemoteVerifier createVerifier(RemoteVerifier.Method method) {
+        return new RemoteVerifier(method, 10, () -> session, source, TARGET, ChecksumCache.inMemory(), new ExportMetrics(),
+                (srcPath, destPath, checksum) -> verified.add(destPath.getFileName().toString()));
+    }
+
+    private static String getName(int number) {
+        return String.format("%08d.tif", number);
+    }
+
+}
@@ -0,0 +1,332 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * End-to-end tests of the SFTP transfer path against an {@link EmbeddedSftpServer}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ VlmExportPlugin.class, Process.class, StorageProvider.class })
+@PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "javax.crypto.*", "org.apache.sshd.*", "com.jcraft.jsch.*",
+        "org.bouncycastle.*", "org.slf4j.*" })
+public class SftpExportTest {
+
+    private static final int FILE_COUNT = 5;
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedSftpServer server;
+    private Path source;
+    private Path remoteRoot;
+    private Path knownHosts;
+    private Process process;
+    private VlmExportPlugin plugin;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMock.mockStatic(StorageProvider.class);
+        EasyMock.expect(StorageProvider.getInstance()).andReturn(new NIOFileUtils()).anyTimes();
+        PowerMock.replay(StorageProvider.class);
+
+        source = folder.newFolder("master").toPath();
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            content[0] = (byte) i;
+            Files.write(source.resolve(String.format("%08d.tif", i + 1)), content);
+        }
+        remoteRoot = folder.newFolder("remote").toPath();
+        server = new EmbeddedSftpServer(remoteRoot);
+        knownHosts = folder.getRoot().toPath().resolve("known_hosts");
+        server.writeKnownHosts(knownHosts);
+
+        process = EasyMock.createMock(Process.class);
+        EasyMock.expect(process.getId()).andReturn(0).anyTimes();
+        EasyMock.replay(process);
+
+        plugin = new VlmExportPlugin();
+        plugin.setProcess(process);
+        plugin.setUseSftp(true);
+        plugin.setHostname("localhost");
+        plugin.setPort(server.getPort());
+        plugin.setUsername(EmbeddedSftpServer.USERNAME);
+        plugin.setPassword(EmbeddedSftpServer.PASSWORD);
+        plugin.setKnownHosts(knownHosts.toString());
+        plugin.setSftpChannels(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        plugin.closeChannels();
+        plugin.closeSession(false);
+        server.close();
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        assertTrue(export("upload"));
+        assertUploaded("upload");
+        assertTrue(Files.exists(remoteRoot.resolve("vlm/" + getTargetName("upload") + ".ctl")));
+    }
+
+    @Test
+    public void testUploadIgnoresLeftoverLocalCtlFile() throws Exception {
+        // left behind by an earlier version of the plugin, or created by a concurrent export of the same id
+        Path leftover = Path.of(System.getProperty("java.io.tmpdir"), getTargetName("leftover") + ".ctl");
+        Files.write(leftover, new byte[0]);
+        try {
+            assertTrue(export("leftover"));
+            assertTrue(Files.exists(remoteRoot.resolve("vlm/" + getTargetName("leftover") + ".ctl")));
+        } finally {
+            Files.deleteIfExists(leftover);
+        }
+    }
+
+    @Test
+    public void testUploadOverSeveralChannelsWithLatency() throws Exception {
+        server.setLatency(5);
+        plugin.setSftpChannels(3);
+        assertTrue(export("channels"));
+        assertUploaded("channels");
+    }
+
+    @Test
+    public void testUploadResumesAfterDroppedConnection() throws Exception {
+        plugin.setSftpRetries(3);
+        plugin.setSftpRetryBackoff(10L);
+        server.dropConnectionAfterWrites(10);
+        assertTrue(export("dropped"));
+        assertUploaded("dropped");
+    }
+
+    @Test
+    public void testUploadReplacesOldContent() throws Exception {
+        plugin.setSftpChannels(2);
+        Path oldTarget = Files.createDirectories(remoteRoot.resolve("vlm/" + getTargetName("replaced")));
+        for (int i = 0; i < 10; i++) {
+            Files.write(oldTarget.resolve("old" + i + ".tif"), new byte[] { (byte) i });
+        }
+        assertTrue(export("replaced"));
+        assertUploaded("replaced");
+        try (Stream<Path> stream = Files.list(oldTarget)) {
+            assertEquals(FILE_COUNT, stream.count());
+        }
+        assertFalse(Files.exists(oldTarget.resolveSibling("." + oldTarget.getFileName() + ".replaced")));
+    }
+
+    @Test
+    public void testUploadWithAdditionalFolder() throws Exception {
+        Path media = folder.newFolder("media").toPath();
+        Files.write(media.resolve("00000001.jpg"), new byte[] { 1, 2, 3 });
+        plugin.setAdditionalFolders(List.of(new VlmExportPlugin.AdditionalFolder(media, "media")));
+        assertTrue(export("additional"));
+        assertUploaded("additional");
+        Path uploaded = remoteRoot.resolve("vlm/" + getTargetName("additional") + "/media/00000001.jpg");
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(uploaded));
+    }
+
+    @Test
+    public void testUploadWithVerification() throws Exception {
+        plugin.setSftpChannels(2);
+        plugin.setVerifySftp(true);
+        // the embedded server does not run commands, so only the sizes of the files are compared
+        plugin.setVerifyMethod(RemoteVerifier.Method.EXEC);
+        plugin.setVerifyBatchSize(2);
+        assertTrue(export("verified"));
+        assertUploaded("verified");
+    }
+
+    @Test
+    public void testUploadVerifiedBySha256sum() throws Exception {
+        server.enableSha256sum();
+        plugin.setSftpChannels(2);
+        plugin.setVerifySftp(true);
+        plugin.setVerifyMethod(RemoteVerifier.Method.EXEC);
+        plugin.setVerifyBatchSize(2);
+        assertTrue(export("sha256sum"));
+        assertUploaded("sha256sum");
+        // the version check and at least one batch of files, no file was read back
+        assertTrue(server.getSha256sumCalls() >= 2);
+    }
+
+    @Test
+    public void testUploadAsZipArchive() throws Exception {
+        plugin.setArchiveFormat(ArchiveWriter.Format.ZIP);
+        assertTrue(export("zip"));
+        Path archive = remoteRoot.resolve("vlm/" + getTargetName("zip") + ".zip");
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                byte[] content = zip.readAllBytes();
+                if (!ArchiveWriter.MANIFEST_NAME.equals(entry.getName())) {
+                    assertArrayEquals(Files.readAllBytes(source.resolve(entry.getName())), content);
+                }
+                entries.add(entry.getName());
+            }
+        }
+        assertEquals(FILE_COUNT + 1, entries.size());
+        assertEquals(ArchiveWriter.MANIFEST_NAME, entries.get(FILE_COUNT));
+        assertFalse(Files.exists(remoteRoot.resolve("vlm/." + getTargetName("zip") + ".zip.staging")));
+    }
+
+    @Test
+    public void testDeltaUpload() throws Exception {
+        assertDeltaUpload("delta");
+    }
+
+    @Test
+    public void testDeltaUploadWithChecksumOption() throws Exception {
+        // checksums are not compared for remote targets, size and modification time still are
+        plugin.setDeltaChecksum(true);
+        assertDeltaUpload("deltachecksum");
+    }
+
+    @Test
+    public void testStagedDeltaUpload() throws Exception {
+        plugin.setUseStaging(true);
+        plugin.setDeltaExport(true);
+        assertTrue(export("stageddelta"));
+        Path target = remoteRoot.resolve("vlm/" + getTargetName("stageddelta"));
+        // a reader of the published folder, which must not see the new content
+        Path reader = folder.getRoot().toPath().resolve("reader.tif");
+        Files.createLink(reader, target.resolve("00000002.tif"));
+        byte[] published = Files.readAllBytes(reader);
+
+        assertDeltaUploadAgain("stageddelta");
+        assertArrayEquals(published, Files.readAllBytes(reader));
+        assertFalse(Files.exists(target.resolveSibling("." + target.getFileName() + ".staging")));
+    }
+
+    @Test
+    public void testHiddenFolderIsNotCreated() throws Exception {
+        Path parent = Path.of("/vlm", getTargetName("hidden"));
+        assertTrue(plugin.connectSftp());
+        assertTrue(plugin.createFolder(true, parent));
+        // the parent folder is known now, so a visible folder would be created right away
+        assertFalse(plugin.createFolder(true, parent.resolve(".staging")));
+        assertFalse(plugin.createFolder(true, parent.resolve("visible/.hidden")));
+        Path remoteParent = remoteRoot.resolve("vlm/" + getTargetName("hidden"));
+        assertFalse(Files.exists(remoteParent.resolve(".staging")));
+        assertFalse(Files.exists(remoteParent.resolve("visible")));
+    }
+
+    @Test
+    public void testJournalRecordsChecksumsOfUnverifiedUploads() throws Exception {
+        Path processFolder = folder.newFolder("process").toPath();
+        plugin.setUseJournal(true);
+        plugin.setProcessFolder(processFolder);
+        // the export breaks off after some files, so that the journal is kept
+        server.dropConnectionAfterWrites(FILE_COUNT * 2);
+        assertFalse(export("journal"));
+        List<String> recorded = new ArrayList<>();
+        for (String line : Files.readAllLines(processFolder.resolve(ExportJournal.FILE_NAME))) {
+            if (line.startsWith("F\t")) {
+                String[] parts = line.split("\t");
+                recorded.add(parts[1]);
+                assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(source.resolve(parts[1]))), parts[4]);
+            }
+        }
+        assertFalse(recorded.isEmpty());
+    }
+
+    @Test
+    public void testUploadFailsWithoutRetries() throws Exception {
+        server.failNextWrites(1);
+        assertFalse(export("failed"));
+    }
+
+    /**
+     * 
+     * @param name name of the target folder, made unique per test
+     */
+    private boolean export(String name) throws Exception {
+        Path targetPath = Path.of("/vlm", getTargetName(name));
+        assertTrue(plugin.connectSftp());
+        if (plugin.isUseStaging()) {
+            // the target folder only comes into existence by renaming the staging folder
+            plugin.setTargetPath(targetPath);
+            assertTrue(plugin.createFolder(true, targetPath.getParent()));
+            assertTrue(plugin.prepareStaging());
+        } else {
+            assertTrue(plugin.createFolder(true, targetPath));
+        }
+        return plugin.tryCopy(process, source, targetPath, targetPath, true);
+    }
+
+    /**
+     * Uploads the folder, then changes the second file, removes the third one, adds a sixth one and uploads the folder again.
+     */
+    private void assertDeltaUpload(String name) throws Exception {
+        plugin.setDeltaExport(true);
+        assertTrue(export(name));
+        assertDeltaUploadAgain(name);
+    }
+
+    private void assertDeltaUploadAgain(String name) throws Exception {
+        Path target = remoteRoot.resolve("vlm/" + getTargetName(name));
+        Object unchanged = Files.readAttributes(target.resolve("00000001.tif"), BasicFileAttributes.class).fileKey();
+        plugin.closeChannels();
+        plugin.closeSession(false);
+
+        Files.write(source.resolve("00000002.tif"), new byte[] { 1, 2, 3 });
+        Files.delete(source.resolve("00000003.tif"));
+        Files.write(source.resolve("00000006.tif"), new byte[] { 4, 5, 6 });
+        assertTrue(export(name));
+        assertUploaded(name);
+        try (Stream<Path> stream = Files.list(target)) {
+            assertEquals(FILE_COUNT, stream.count());
+        }
+        assertFalse(Files.exists(target.resolve("00000003.tif")));
+        // the unchanged file was neither uploaded nor copied again
+        assertEquals(unchanged, Files.readAttributes(target.resolve("00000001.tif"), BasicFileAttributes.class).fileKey());
+    }
+
+    private String getTargetName(String name) {
+        return folder.getRoot().getName() + "_" + name;
+    }
+
+    private void assertUploaded(String name) throws Exception {
+        String target = "vlm/" + getTargetName(name);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(source)) {
+            files = stream.toList();
+        }
+        for (Path file : files) {
+            Path uploaded = remoteRoot.resolve(target).resolve(file.getFileName().toString());
+            assertTrue(Files.exists(uploaded));
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(uploaded));
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+public class SftpSessionPoolTest {
+
+    private static final int IDLE_TIMEOUT_SECONDS = 60;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedSftpServer server;
+    private Path knownHosts;
+    private SftpSessionPool pool;
+    private SftpSessionPool.SessionKey key;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new EmbeddedSftpServer(folder.newFolder("remote").toPath());
+        knownHosts = folder.getRoot().toPath().resolve("known_hosts");
+        server.writeKnownHosts(knownHosts);
+        pool = new SftpSessionPool();
+        key = new SftpSessionPool.SessionKey("localhost", server.getPort(), EmbeddedSftpServer.USERNAME, "password");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    public void testReleasedSessionIsReused() throws Exception {
+        Session session = pool.borrow(key, this::connect, 0);
+        pool.release(key, session, IDLE_TIMEOUT_SECONDS);
+        assertSame(session, pool.borrow(key, this::connect, 0));
+        assertTrue(session.isConnected());
+    }
+
+    @Test
+    public void testCloseDisconnectsIdleSessions() throws Exception {
+        Session session = pool.borrow(key, this::connect, 0);
+        pool.release(key, session, IDLE_TIMEOUT_SECONDS);
+        pool.close();
+        assertFalse(session.isConnected());
+    }
+
+    @Test
+    public void testSessionReleasedAfterCloseIsDisconnected() throws Exception {
+        Session borrowed = pool.borrow(key, this::connect, 0);
+        pool.close();
+        pool.release(key, borrowed, IDLE_TIMEOUT_SECONDS);
+        assertFalse(borrowed.isConnected());
+        Session session = pool.borrow(key, this::connect, 0);
+        assertNotSame(borrowed, session);
+        session.disconnect();
+    }
+
+    private Session connect() throws JSchException {
+        JSch jsch = new JSch();
+        jsch.setKnownHosts(knownHosts.toString());
+        Session session = jsch.getSession(EmbeddedSftpServer.USERNAME, "localhost", server.getPort());
+        session.setPassword(EmbeddedSftpServer.PASSWORD);
+        session.connect();
+        return session;
+    }
+
+}
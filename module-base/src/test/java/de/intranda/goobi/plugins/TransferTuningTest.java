@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TransferTuningTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testParseSize() {
+        assertEquals(1000, TransferTuning.parseSize("1000"));
+        assertEquals(64 * 1024, TransferTuning.parseSize("64k"));
+        assertEquals(16 * 1024, TransferTuning.parseSize(" 16 K "));
+        assertEquals(8 * 1024 * 1024, TransferTuning.parseSize("8M"));
+        assertEquals(2L * 1024 * 1024 * 1024, TransferTuning.parseSize("2g"));
+    }
+
+    @Test
+    public void testParseSizeRejectsInvalidValues() {
+        assertEquals(-1, TransferTuning.parseSize(""));
+        assertEquals(-1, TransferTuning.parseSize("M"));
+        assertEquals(-1, TransferTuning.parseSize("fast"));
+        assertEquals(-1, TransferTuning.parseSize("1.5M"));
+    }
+
+    @Test
+    public void testFixedBufferSize() {
+        TransferTuning tuning = TransferTuning.parse("256k");
+        assertEquals(256 * 1024, tuning.getBufferSize(100L * 1024 * 1024));
+        // measurements do not change a fixed size
+        tuning.record(SECOND, SECOND);
+        assertEquals(256 * 1024, tuning.getBufferSize(100L * 1024 * 1024));
+        // small files use a small buffer
+        assertEquals(8 * 1024, tuning.getBufferSize(1000));
+    }
+
+    @Test
+    public void testInvalidValueIsAdaptive() {
+        assertEquals(1024 * 1024, TransferTuning.parse("fast").getBufferSize(Long.MAX_VALUE));
+        assertEquals(1024 * 1024, TransferTuning.parse("auto").getBufferSize(Long.MAX_VALUE));
+        assertEquals(1024 * 1024, TransferTuning.parse(null).getBufferSize(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAdaptiveBufferHoldsTwentyMilliseconds() {
+        TransferTuning tuning = new TransferTuning(0);
+        // 100 MB per second
+        tuning.record(100_000_000L, SECOND);
+        assertEquals(2_000_000, tuning.getBufferSize(Long.MAX_VALUE), 1);
+        // a buffer is never larger than the file
+        assertEquals(100_000, tuning.getBufferSize(100_000));
+    }
+
+    @Test
+    public void testAdaptiveBufferFollowsThroughput() {
+        TransferTuning tuning = new TransferTuning(0);
+        tuning.record(100_000_000L, SECOND);
+        tuning.record(200_000_000L, SECOND);
+        // the new measurement is weighted with 0.2
+        assertEquals(2_400_000, tuning.getBufferSize(Long.MAX_VALUE), 1);
+    }
+
+    @Test
+    public void testAdaptiveBufferIsBounded() {
+        TransferTuning fast = new TransferTuning(0);
+        fast.record(100_000_000L, 1_000_000L);
+        assertEquals(TransferTuning.MAX_BUFFER_SIZE, fast.getBufferSize(Long.MAX_VALUE));
+        TransferTuning slow = new TransferTuning(0);
+        slow.record(100_000L, SECOND);
+        assertEquals(TransferTuning.MIN_BUFFER_SIZE, slow.getBufferSize(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSmallTransfersAreIgnored() {
+        TransferTuning tuning = new TransferTuning(0);
+        tuning.record(1000, 1);
+        assertEquals(1024 * 1024, tuning.getBufferSize(Long.MAX_VALUE));
+    }
+
+}
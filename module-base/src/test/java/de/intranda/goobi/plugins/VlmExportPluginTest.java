@@ -1,5 +1,6 @@
 package de.intranda.goobi.plugins;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -8,12 +9,15 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.easymock.EasyMock;
 import org.goobi.beans.Process;
+import org.goobi.beans.Project;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
@@ -32,7 +36,7 @@ import de.sub.goobi.helper.NIOFileUtils;
 import de.sub.goobi.helper.StorageProvider;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({ ConfigPlugins.class, VlmExportPlugin.class, Process.class, StorageProvider.class })
+@PrepareForTest({ ConfigPlugins.class, VlmExportPlugin.class, Process.class, Project.class, StorageProvider.class, ExportConfiguration.class })
 @PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*" })
 public class VlmExportPluginTest {
 
@@ -103,6 +107,58 @@ public class VlmExportPluginTest {
     }
 
 
+    /* Tests for the method startBatchExport(List<Process>) */
+    @Test
+    public void testBatchExportRecordsRuntimeExceptionPerProcess() throws Exception {
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        PowerMock.mockStaticPartial(ExportConfiguration.class, "getInstance");
+        EasyMock.expect(ExportConfiguration.getInstance(EasyMock.anyString())).andReturn(new ExportConfiguration(xmlConfig, -1)).anyTimes();
+        PowerMock.replay(ExportConfiguration.class);
+
+        List<VlmExportResult> results = new VlmExportPlugin().startBatchExport(List.of(createBrokenProcess(-1), createBrokenProcess(-2)));
+
+        assertEquals(2, results.size());
+        for (VlmExportResult result : results) {
+            assertFalse(result.isSuccess());
+            assertEquals(1, result.getProblems().size());
+            assertTrue(result.getProblems().get(0).contains("deliberate failure"));
+        }
+        assertEquals(-1, results.get(0).getProcessId());
+        assertEquals(-2, results.get(1).getProcessId());
+    }
+
+    /**
+     * 
+     * @param id negative id, so that no journal entries are written
+     * @return Process whose preparation fails with a RuntimeException when its image folder is looked up
+     */
+    private Process createBrokenProcess(int id) throws Exception {
+        Project project = EasyMock.createMock(Project.class);
+        EasyMock.expect(project.getDmsImportImagesPath()).andReturn(tempFolderDirectory).anyTimes();
+        EasyMock.replay(project);
+        Process process = EasyMock.createMock(Process.class);
+        EasyMock.expect(process.getId()).andReturn(id).anyTimes();
+        EasyMock.expect(process.getTitel()).andReturn("process" + id).anyTimes();
+        EasyMock.expect(process.getProjekt()).andReturn(project).anyTimes();
+        EasyMock.expect(process.getImagesOrigDirectory(false)).andThrow(new IllegalStateException("deliberate failure")).anyTimes();
+        EasyMock.replay(process);
+        return process;
+    }
+
+    @Test
+    public void testRetryBackoffIsLimited() {
+        for (int i = 0; i < 100; i++) {
+            long first = VlmExportPlugin.getRetryBackoff(1000, 60000, 0);
+            assertTrue("first pause " + first, first >= 500 && first <= 1000);
+            long third = VlmExportPlugin.getRetryBackoff(1000, 60000, 2);
+            assertTrue("third pause " + third, third >= 2000 && third <= 4000);
+            long late = VlmExportPlugin.getRetryBackoff(1000, 60000, 30);
+            assertTrue("late pause " + late, late >= 30000 && late <= 60000);
+        }
+        assertEquals(0, VlmExportPlugin.getRetryBackoff(0, 60000, 3));
+    }
+
     /*================= Tests for the private methods ================= */
 
     @Test
@@ -0,0 +1,60 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VlmExportQueueTest {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testShutdownWaitsForQueuedExports() throws Exception {
+        VlmExportQueue queue = new VlmExportQueue();
+        assertTrue(queue.submit("target", 1, 5, () -> sleep("first", 50), () -> events.add("first cancelled")));
+        assertTrue(queue.submit("target", 1, 5, () -> sleep("second", 50), () -> events.add("second cancelled")));
+        queue.shutdown(1, TimeUnit.MINUTES);
+        assertEquals(List.of("first", "second"), events);
+    }
+
+    @Test
+    public void testShutdownCancelsExportsThatDidNotStart() throws Exception {
+        VlmExportQueue queue = new VlmExportQueue();
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(queue.submit("target", 1, 5, () -> {
+            started.countDown();
+            sleep("running", 10_000);
+        }, () -> events.add("running cancelled")));
+        assertTrue(queue.submit("target", 1, 5, () -> events.add("waiting"), () -> events.add("waiting cancelled")));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        queue.shutdown(50, TimeUnit.MILLISECONDS);
+        // the running export was interrupted, the waiting one never ran
+        assertEquals(List.of("running interrupted", "waiting cancelled"), events);
+    }
+
+    @Test
+    public void testExportsAreRunByCallerAfterShutdown() {
+        VlmExportQueue queue = new VlmExportQueue();
+        queue.shutdown(1, TimeUnit.SECONDS);
+        assertFalse(queue.submit("target", 1, 5, () -> events.add("export"), () -> events.add("cancelled")));
+        assertEquals(List.of("export"), events);
+    }
+
+    private void sleep(String export, long millis) {
+        try {
+            Thread.sleep(millis);
+            events.add(export);
+        } catch (InterruptedException e) {
+            events.add(export + " interrupted");
+        }
+    }
+
+}
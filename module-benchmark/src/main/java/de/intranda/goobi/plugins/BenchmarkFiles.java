@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Creates and removes the test data of the benchmarks.
+ */
+final class BenchmarkFiles {
+
+    private static final long SEED = 42;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Creates files with random content, so that file systems cannot compress or deduplicate them.
+     *
+     * @param folder folder to create the files in
+     * @param count number of files
+     * @param size size of every file in bytes
+     * @return paths of the created files
+     * @throws IOException
+     */
+    static List<Path> createFiles(Path folder, int count, int size) throws IOException {
+        Files.createDirectories(folder);
+        Random random = new Random(SEED);
+        byte[] content = new byte[size];
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(content);
+            Path file = folder.resolve(String.format("%08d.tif", i + 1));
+            Files.write(file, content);
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     *
+     * @param resource name of a resource of this module
+     * @param folder folder to copy the resource into
+     * @return path of the copied resource
+     * @throws IOException
+     */
+    static Path copyResource(String resource, Path folder) throws IOException {
+        Path file = folder.resolve(resource);
+        try (InputStream in = BenchmarkFiles.class.getResourceAsStream("/" + resource)) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     *
+     * @param folder folder to be deleted including its contents, nothing happens if it does not exist
+     * @throws IOException
+     */
+    static void delete(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
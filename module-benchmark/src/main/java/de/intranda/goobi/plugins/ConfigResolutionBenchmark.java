@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.ExportConfiguration.ConfigBlock;
+
+/**
+ * Resolves the matching config block among `blockCount` blocks with `conditionCount` conditions each, of which only the last block matches.
+ * Parsing the configuration is measured separately, since it only happens again once the configuration file was changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConfigResolutionBenchmark {
+
+    private static final String PROJECT = "Benchmark";
+
+    @Param({ "10", "100" })
+    public int blockCount;
+
+    @Param({ "1", "5" })
+    public int conditionCount;
+
+    private XMLConfiguration xmlConfig;
+    private List<ConfigBlock> blocks;
+    private VlmExportPlugin plugin;
+    private UnaryOperator<String> replacer;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder xml = new StringBuilder("<config_plugin>");
+        for (int i = 0; i < blockCount; i++) {
+            xml.append("<config><project>").append(PROJECT).append("</project>");
+            for (int c = 0; c < conditionCount; c++) {
+                xml.append("<condition><type>variablematcher</type><field>{meta.field").append(c).append("}</field><matches>block")
+                        .append(i)
+                        .append("</matches></condition>");
+            }
+            xml.append("<path>/opt/digiverso/viewer/hotfolder</path></config>");
+        }
+        xml.append("</config_plugin>");
+
+        xmlConfig = new XMLConfiguration();
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.load(new StringReader(xml.toString()));
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+
+        blocks = new ExportConfiguration(xmlConfig, -1).getBlocks(PROJECT);
+        plugin = new VlmExportPlugin();
+        String value = "block" + (blockCount - 1);
+        replacer = field -> value;
+    }
+
+    @Benchmark
+    public ConfigBlock filterConfigurations() {
+        return plugin.filterConfigurations(blocks, replacer);
+    }
+
+    @Benchmark
+    public ExportConfiguration parseConfiguration() {
+        return new ExportConfiguration(xmlConfig, -1);
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Looks up metadata of a logical structure element the way the identifier and the volume are determined, with the searched metadata at the end
+ * of `metadataCount` other metadata.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FindMetadataBenchmark {
+
+    private static final String IDENTIFIER = "CatalogIDDigital";
+
+    @Param({ "10", "100", "1000" })
+    public int metadataCount;
+
+    private DocStruct logical;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path folder = Files.createTempDirectory("vlm-benchmark");
+        Prefs prefs = new Prefs();
+        try {
+            prefs.loadPrefs(BenchmarkFiles.copyResource("benchmark_ruleset.xml", folder).toString());
+        } finally {
+            BenchmarkFiles.delete(folder);
+        }
+        DigitalDocument dd = new DigitalDocument();
+        logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        MetadataType title = prefs.getMetadataTypeByName("TitleDocMain");
+        for (int i = 0; i < metadataCount; i++) {
+            Metadata md = new Metadata(title);
+            md.setValue("Title " + i);
+            logical.addMetadata(md);
+        }
+        Metadata identifier = new Metadata(prefs.getMetadataTypeByName(IDENTIFIER));
+        identifier.setValue("990012345670206881");
+        logical.addMetadata(identifier);
+    }
+
+    @Benchmark
+    public String findExisting() {
+        return VlmExportPlugin.findMetadata(logical, IDENTIFIER);
+    }
+
+    @Benchmark
+    public String findMissing() {
+        return VlmExportPlugin.findMetadata(logical, "CurrentNo");
+    }
+
+}
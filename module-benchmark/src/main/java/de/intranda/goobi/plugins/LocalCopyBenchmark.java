@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.goobi.beans.Process;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copies a folder the way copyImagesLocal does: every file is copied and verified by copyImageLocal of the plugin, called by one of `threads`
+ * workers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LocalCopyBenchmark {
+
+    @Param({ "10", "100" })
+    public int fileCount;
+
+    @Param({ "65536", "16777216" })
+    public int fileSize;
+
+    @Param({ "stream", "transfer", "auto" })
+    public String copyMode;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private Path folder;
+    private Path target;
+    private List<Path> files;
+    private LocalFileCopier copier;
+    private VlmExportPlugin plugin;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("vlm-benchmark");
+        files = BenchmarkFiles.createFiles(folder.resolve("master"), fileCount, fileSize);
+        target = Files.createDirectories(folder.resolve("target"));
+        copier = new LocalFileCopier(false, LocalFileCopier.Mode.parse(copyMode));
+        // process 0 keeps the messages of the plugin out of the process journal
+        Process process = new Process();
+        process.setId(0);
+        plugin = new VlmExportPlugin();
+        plugin.setProcess(process);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public void copyAndVerify() throws Exception {
+        // an empty cache, as during the first export of a process
+        plugin.setChecksumCache(ChecksumCache.inMemory());
+        List<Future<Void>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(executor.submit(() -> {
+                plugin.copyImageLocal(copier, file, target.resolve(file.getFileName()));
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goobi.beans.Process;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Uploads a folder to an embedded SFTP server through copyImagesSftp of the plugin, which distributes the files over `channels` channels that
+ * are opened on the same session.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SftpUploadBenchmark {
+
+    private static final Path TARGET = Paths.get("/upload");
+
+    @Param({ "10", "100" })
+    public int fileCount;
+
+    @Param({ "65536", "4194304" })
+    public int fileSize;
+
+    @Param({ "1", "4" })
+    public int channels;
+
+    private Path folder;
+    private Path source;
+    private List<String> files;
+    private EmbeddedSftpServer server;
+    private VlmExportPlugin plugin;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("vlm-benchmark");
+        source = folder.resolve("master");
+        files = new ArrayList<>(fileCount);
+        for (Path file : BenchmarkFiles.createFiles(source, fileCount, fileSize)) {
+            files.add(file.getFileName().toString());
+        }
+        Path remoteRoot = Files.createDirectories(folder.resolve("remote"));
+        Files.createDirectories(remoteRoot.resolve(TARGET.getFileName()));
+        server = new EmbeddedSftpServer(remoteRoot);
+        Path knownHosts = folder.resolve("known_hosts");
+        server.writeKnownHosts(knownHosts);
+
+        // process 0 keeps the messages of the plugin out of the process journal
+        Process process = new Process();
+        process.setId(0);
+
+        plugin = new VlmExportPlugin();
+        plugin.setProcess(process);
+        plugin.setUseSftp(true);
+        plugin.setHostname("localhost");
+        plugin.setPort(server.getPort());
+        plugin.setUsername(EmbeddedSftpServer.USERNAME);
+        plugin.setPassword(EmbeddedSftpServer.PASSWORD);
+        plugin.setKnownHosts(knownHosts.toString());
+        plugin.setSftpChannels(channels);
+        plugin.setChecksumCache(ChecksumCache.inMemory());
+        if (!plugin.connectSftp()) {
+            throw new IOException("Failed to connect to the embedded SFTP server.");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        plugin.closeChannels();
+        plugin.closeSession(false);
+        server.close();
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public int upload() throws Exception {
+        // the first channel is the one opened by connectSftp, as during an export
+        ExportManifest manifest = new ExportManifest();
+        plugin.copyImagesSftp(plugin.getSftpChannel(), source, TARGET, files, manifest);
+        return manifest.getCopied().size();
+    }
+
+}